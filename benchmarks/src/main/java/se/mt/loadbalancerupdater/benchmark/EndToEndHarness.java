@@ -0,0 +1,201 @@
+package se.mt.loadbalancerupdater.benchmark;
+
+import se.mt.loadbalancerupdater.BalancerConfig;
+import se.mt.loadbalancerupdater.HostUpdater;
+import se.mt.loadbalancerupdater.OperationEngine;
+import se.mt.loadbalancerupdater.OperationResult;
+import se.mt.loadbalancerupdater.Settings;
+import se.mt.loadbalancerupdater.StatusCache;
+import se.mt.loadbalancerupdater.WorkerMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disables and then enables workers on a number of fake balancer-manager hosts, through the same code as the
+ * GUI and the command line mode, and reports wall-clock time and the requests each step took:
+ * <pre>
+ * java -cp target/benchmarks.jar se.mt.loadbalancerupdater.benchmark.EndToEndHarness
+ *     --hosts 20 --balancers 5 --workers 200 --layout APACHE_24 --latency 20 --jitter 30 --error-rate 0.01
+ * </pre>
+ * Other options are --hang-rate, --hang-millis, --search and --runs. The updater's own settings are given as
+ * system properties as usual, e.g. -Dlbupdater.worker.concurrency=8. Changes are not journaled unless
+ * -Dlbupdater.journal.file is given.
+ */
+public class EndToEndHarness {
+
+    private int hostCount = 10;
+    private int balancerCount = 5;
+    private int workerCount = 200;
+    private StatusPages.Layout layout = StatusPages.Layout.APACHE_22;
+    private int latencyMillis = 10;
+    private int jitterMillis = 10;
+    private double errorRate;
+    private double hangRate;
+    private int hangMillis = 60000;
+    private String searchString = "tomcat1.";
+    private int runs = 3;
+
+    private final List<FakeBalancerManager> servers = new ArrayList<FakeBalancerManager>();
+
+    public static void main(String[] args) throws Exception {
+        // The fake hosts' changes don't belong in the operator's journal, unless a file is asked for
+        if (Settings.getString(Settings.JOURNAL_FILE, null) == null) {
+            Settings.setDefault(Settings.JOURNAL, "0");
+        }
+        EndToEndHarness harness = new EndToEndHarness();
+        if (!harness.parseArguments(args)) {
+            System.err.println("Usage: EndToEndHarness [--hosts n] [--balancers n] [--workers n] "
+                    + "[--layout APACHE_22|APACHE_24] [--latency ms] [--jitter ms] [--error-rate f] "
+                    + "[--hang-rate f] [--hang-millis ms] [--search s] [--runs n]");
+            System.exit(1);
+        }
+        harness.run();
+    }
+
+    private boolean parseArguments(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    return false;
+                }
+                String name = args[i];
+                String value = args[i + 1];
+                if (name.equals("--hosts")) {
+                    hostCount = Integer.parseInt(value);
+                } else if (name.equals("--balancers")) {
+                    balancerCount = Integer.parseInt(value);
+                } else if (name.equals("--workers")) {
+                    workerCount = Integer.parseInt(value);
+                } else if (name.equals("--layout")) {
+                    layout = StatusPages.Layout.valueOf(value);
+                } else if (name.equals("--latency")) {
+                    latencyMillis = Integer.parseInt(value);
+                } else if (name.equals("--jitter")) {
+                    jitterMillis = Integer.parseInt(value);
+                } else if (name.equals("--error-rate")) {
+                    errorRate = Double.parseDouble(value);
+                } else if (name.equals("--hang-rate")) {
+                    hangRate = Double.parseDouble(value);
+                } else if (name.equals("--hang-millis")) {
+                    hangMillis = Integer.parseInt(value);
+                } else if (name.equals("--search")) {
+                    searchString = value;
+                } else if (name.equals("--runs")) {
+                    runs = Integer.parseInt(value);
+                } else {
+                    return false;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // The XML status is a variant of the 2.4 page, the server picks it when asked
+        return layout != StatusPages.Layout.APACHE_24_XML && hostCount > 0 && balancerCount > 0;
+    }
+
+    private void run() throws Exception {
+        List<String> hosts = new ArrayList<String>();
+        List<String> balancerNames = null;
+        for (int i = 0; i < hostCount; i++) {
+            List<SimulatedBalancer> balancers = SimulatedBalancer.generate(balancerCount, workerCount);
+            balancerNames = SimulatedBalancer.getNames(balancers);
+            FakeBalancerManager server = new FakeBalancerManager(layout, balancers);
+            server.setLatency(latencyMillis, jitterMillis);
+            server.setErrorRate(errorRate);
+            server.setHangRate(hangRate, hangMillis);
+            server.start();
+            servers.add(server);
+            hosts.add(server.getHost());
+        }
+
+        BalancerConfig config = new BalancerConfig("end-to-end", hosts,
+                Collections.singletonList(searchString), balancerNames);
+        System.out.println("hosts=" + hostCount + " balancers=" + balancerCount + " workers/host=" + workerCount
+                + " layout=" + layout + " latency=" + latencyMillis + "+" + jitterMillis + "ms"
+                + " errors=" + errorRate + " hangs=" + hangRate + " search=" + searchString);
+        System.out.println("step\twall ms\tupdated\tfailed hosts\tstatus\tform\tsubmit\tinjected errors\tinjected hangs\tin state");
+
+        try {
+            for (int run = 1; run <= runs; run++) {
+                step("disable " + run, config, false);
+                step("enable " + run, config, true);
+            }
+        } finally {
+            for (FakeBalancerManager server : servers) {
+                server.stop();
+            }
+        }
+    }
+
+    private void step(String name, BalancerConfig config, boolean enable) throws InterruptedException {
+        int[] before = countRequests();
+        // Start each step from the hosts, not from status fetched by the previous one
+        for (String host : config.getBalancerHosts()) {
+            StatusCache.getDefault().invalidate(host);
+        }
+
+        long start = System.nanoTime();
+        OperationEngine engine = new OperationEngine(config.getBalancerHosts().size(),
+                Settings.getInt(Settings.WORKER_CONCURRENCY, 4));
+        HostUpdater hostUpdater = new HostUpdater(engine, config.getBalancerNames(), config.getWorkerMatcher(), enable);
+        OperationResult result = engine.execute(config.getBalancerHosts(), hostUpdater, null).await();
+        long wallMillis = (System.nanoTime() - start) / 1000000;
+        engine.shutdown();
+
+        int[] after = countRequests();
+        StringBuilder line = new StringBuilder(name).append('\t').append(wallMillis)
+                .append('\t').append(result.getTotalUpdatedWorkers())
+                .append('\t').append(result.getFailures().size());
+        for (int i = 0; i < after.length; i++) {
+            line.append('\t').append(after[i] - before[i]);
+        }
+        line.append('\t').append(countInState(config.getWorkerMatcher(), enable)).append('/').append(countMatching(config.getWorkerMatcher()));
+        System.out.println(line);
+        for (Map.Entry<String, Exception> failure : result.getFailures().entrySet()) {
+            System.out.println("  " + failure.getKey() + ": " + failure.getValue());
+        }
+    }
+
+    private int[] countRequests() {
+        int[] counts = new int[5];
+        for (FakeBalancerManager server : servers) {
+            counts[0] += server.getStatusRequests();
+            counts[1] += server.getFormRequests();
+            counts[2] += server.getSubmitRequests();
+            counts[3] += server.getInjectedErrors();
+            counts[4] += server.getInjectedHangs();
+        }
+        return counts;
+    }
+
+    private int countMatching(WorkerMatcher matcher) {
+        int count = 0;
+        for (FakeBalancerManager server : servers) {
+            for (SimulatedBalancer balancer : server.getBalancers()) {
+                for (SimulatedWorker worker : balancer.getWorkers()) {
+                    if (matcher.matches(worker.getName())) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int countInState(WorkerMatcher matcher, boolean enabled) {
+        int count = 0;
+        for (FakeBalancerManager server : servers) {
+            for (SimulatedBalancer balancer : server.getBalancers()) {
+                for (SimulatedWorker worker : balancer.getWorkers()) {
+                    if (matcher.matches(worker.getName()) && worker.isDisabled() != enabled) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,271 @@
+package se.mt.loadbalancerupdater.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import se.mt.loadbalancerupdater.util.NamedThreadFactory;
+import se.mt.loadbalancerupdater.util.QueryStrings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for one Apache host with mod_proxy_balancer, served by the JDK's built-in HTTP server.
+ * <p/>
+ * It serves the status page (and the XML status for Apache 2.4), the edit page of each worker, and applies
+ * submitted changes to its workers, checking the nonce like Apache does. Each request can be delayed,
+ * answered with an error, or left hanging, to see how the updater copes with slow and broken hosts.
+ */
+public class FakeBalancerManager {
+
+    private static final String PATH = "/balancer-manager";
+
+    private final StatusPages.Layout layout;
+    private final List<SimulatedBalancer> balancers;
+    private final Random random = new Random();
+
+    private int latencyMillis;
+    private int jitterMillis;
+    private double errorRate;
+    private double hangRate;
+    private int hangMillis = 60000;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private final AtomicInteger statusRequests = new AtomicInteger();
+    private final AtomicInteger formRequests = new AtomicInteger();
+    private final AtomicInteger submitRequests = new AtomicInteger();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+    private final AtomicInteger injectedHangs = new AtomicInteger();
+
+    public FakeBalancerManager(StatusPages.Layout layout, List<SimulatedBalancer> balancers) {
+        this.layout = layout;
+        this.balancers = balancers;
+    }
+
+    /**
+     * @param latencyMillis Added to every response
+     * @param jitterMillis  Up to this much is added on top of the latency, uniformly distributed
+     */
+    public void setLatency(int latencyMillis, int jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * @param errorRate The share of requests answered with 503 Service Unavailable, 0 to 1
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param hangRate      The share of requests that get no response until hangMillis has passed, 0 to 1
+     */
+    public void setHangRate(double hangRate, int hangMillis) {
+        this.hangRate = hangRate;
+        this.hangMillis = hangMillis;
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 50);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleRequest(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool(new NamedThreadFactory("fake-balancer-manager"));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return The host to configure for the updater, e.g. "127.0.0.1:51234"
+     */
+    public String getHost() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public List<SimulatedBalancer> getBalancers() {
+        return balancers;
+    }
+
+    public int getStatusRequests() {
+        return statusRequests.get();
+    }
+
+    public int getFormRequests() {
+        return formRequests.get();
+    }
+
+    public int getSubmitRequests() {
+        return submitRequests.get();
+    }
+
+    public int getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public int getInjectedHangs() {
+        return injectedHangs.get();
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        Map<String, String> params = QueryStrings.parse(exchange.getRequestURI().toString());
+        if (exchange.getRequestMethod().equals("POST")) {
+            params.putAll(QueryStrings.parse("?" + new String(readBody(exchange.getRequestBody()), "UTF-8")));
+        }
+
+        if (!injectFaults(exchange)) {
+            return;
+        }
+
+        SimulatedBalancer balancer = findBalancer(params.get("b"));
+        SimulatedWorker worker = balancer != null && params.get("w") != null ? balancer.getWorker(params.get("w")) : null;
+
+        if (worker != null && isUpdate(params)) {
+            submitRequests.incrementAndGet();
+            // Apache ignores changes without the right nonce, and shows the status page as usual
+            if (balancer.getNonce().equals(params.get("nonce"))) {
+                applyUpdate(worker, params);
+            }
+            sendStatus(exchange, params);
+        } else if (worker != null) {
+            formRequests.incrementAndGet();
+            send(exchange, "text/html; charset=ISO-8859-1", StatusPages.renderEditForm(layout, balancer, worker));
+        } else {
+            statusRequests.incrementAndGet();
+            sendStatus(exchange, params);
+        }
+    }
+
+    /**
+     * @return True if the request should be answered normally
+     */
+    private boolean injectFaults(HttpExchange exchange) throws IOException {
+        double hangDraw;
+        double errorDraw;
+        int delay;
+        synchronized (random) {
+            hangDraw = random.nextDouble();
+            errorDraw = random.nextDouble();
+            delay = latencyMillis + (jitterMillis > 0 ? random.nextInt(jitterMillis + 1) : 0);
+        }
+        try {
+            if (hangDraw < hangRate) {
+                injectedHangs.incrementAndGet();
+                Thread.sleep(hangMillis);
+                return false;
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (errorDraw < errorRate) {
+            injectedErrors.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isUpdate(Map<String, String> params) {
+        return layout == StatusPages.Layout.APACHE_22 ? params.containsKey("dw")
+                : params.containsKey("w_status_D") || params.containsKey("w_status_N") || params.containsKey("w_status_S");
+    }
+
+    private void applyUpdate(SimulatedWorker worker, Map<String, String> params) {
+        if (layout == StatusPages.Layout.APACHE_22) {
+            worker.setDisabled("Disable".equals(params.get("dw")));
+        } else {
+            // Flags that are not submitted are left as they are
+            if (params.containsKey("w_status_D")) {
+                worker.setDisabled("1".equals(params.get("w_status_D")));
+            }
+            if (params.containsKey("w_status_N")) {
+                worker.setDraining("1".equals(params.get("w_status_N")));
+            }
+            if (params.containsKey("w_status_S")) {
+                worker.setStopped("1".equals(params.get("w_status_S")));
+            }
+        }
+    }
+
+    private void sendStatus(HttpExchange exchange, Map<String, String> params) throws IOException {
+        // Traffic keeps flowing to the enabled workers between fetches, and drains from the others
+        for (SimulatedBalancer balancer : balancers) {
+            for (SimulatedWorker worker : balancer.getWorkers()) {
+                if (worker.isInService()) {
+                    worker.elect();
+                }
+                worker.updateBusy();
+            }
+        }
+        if (layout != StatusPages.Layout.APACHE_22 && "1".equals(params.get("xml"))) {
+            send(exchange, "text/xml; charset=UTF-8", StatusPages.render(StatusPages.Layout.APACHE_24_XML, getHost(), balancers));
+        } else {
+            StatusPages.Layout htmlLayout = layout == StatusPages.Layout.APACHE_22 ? layout : StatusPages.Layout.APACHE_24;
+            send(exchange, "text/html; charset=ISO-8859-1", StatusPages.render(htmlLayout, getHost(), balancers));
+        }
+    }
+
+    private void send(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(contentType.endsWith("UTF-8") ? "UTF-8" : "ISO-8859-1");
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Server",
+                layout == StatusPages.Layout.APACHE_22 ? "Apache/2.2.22 (Ubuntu)" : "Apache/2.4.41 (Ubuntu)");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private SimulatedBalancer findBalancer(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (SimulatedBalancer balancer : balancers) {
+            if (balancer.getName().equals(name)) {
+                return balancer;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
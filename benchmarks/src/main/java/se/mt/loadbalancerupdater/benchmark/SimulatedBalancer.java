@@ -0,0 +1,70 @@
+package se.mt.loadbalancerupdater.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A balancer with its workers, as shown on a generated balancer-manager page.
+ */
+public class SimulatedBalancer {
+
+    private final String name;
+    private final String nonce;
+    private final List<SimulatedWorker> workers = new ArrayList<SimulatedWorker>();
+
+    public SimulatedBalancer(String name) {
+        this.name = name;
+        this.nonce = UUID.nameUUIDFromBytes(name.getBytes()).toString();
+    }
+
+    /**
+     * Creates balancers named cluster0, cluster1 and so on, with the workers spread evenly over them.
+     * Every seventh worker is disabled, so that pages have a mix of states.
+     */
+    public static List<SimulatedBalancer> generate(int balancerCount, int workerCount) {
+        List<SimulatedBalancer> balancers = new ArrayList<SimulatedBalancer>(balancerCount);
+        for (int i = 0; i < balancerCount; i++) {
+            balancers.add(new SimulatedBalancer("cluster" + i));
+        }
+        for (int i = 0; i < workerCount; i++) {
+            SimulatedWorker worker = new SimulatedWorker("http://tomcat" + i + ".example.com:8080", "tomcat" + i);
+            worker.setDisabled(i % 7 == 6);
+            balancers.get(i % balancerCount).workers.add(worker);
+        }
+        return balancers;
+    }
+
+    /**
+     * @return The names of the balancers, as configured, e.g. "cluster0"
+     */
+    public static List<String> getNames(List<SimulatedBalancer> balancers) {
+        List<String> names = new ArrayList<String>(balancers.size());
+        for (SimulatedBalancer balancer : balancers) {
+            names.add(balancer.getName());
+        }
+        return names;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNonce() {
+        return nonce;
+    }
+
+    public List<SimulatedWorker> getWorkers() {
+        return Collections.unmodifiableList(workers);
+    }
+
+    public SimulatedWorker getWorker(String workerName) {
+        for (SimulatedWorker worker : workers) {
+            if (worker.getName().equals(workerName)) {
+                return worker;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,97 @@
+package se.mt.loadbalancerupdater.benchmark;
+
+/**
+ * A worker on a generated balancer-manager page. The state may be changed by concurrent submits.
+ */
+public class SimulatedWorker {
+
+    private final String name;
+    private final String route;
+    private volatile boolean disabled;
+    private volatile boolean draining;
+    private volatile boolean stopped;
+    private volatile long elected;
+    private volatile int busy;
+
+    public SimulatedWorker(String name, String route) {
+        this.name = name;
+        this.route = route;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    public void setDisabled(boolean disabled) {
+        this.disabled = disabled;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public void setDraining(boolean draining) {
+        this.draining = draining;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public void setStopped(boolean stopped) {
+        this.stopped = stopped;
+    }
+
+    /**
+     * @return True if the balancer sends the worker new requests
+     */
+    public boolean isInService() {
+        return !disabled && !draining && !stopped;
+    }
+
+    public int getBusy() {
+        return busy;
+    }
+
+    public long getElected() {
+        return elected;
+    }
+
+    /**
+     * Counts a request sent to the worker, so that the counters on the page change between fetches.
+     */
+    public synchronized void elect() {
+        elected++;
+    }
+
+    /**
+     * Moves the number of requests in flight along: a few while in service, one less each time once taken out.
+     */
+    public synchronized void updateBusy() {
+        if (isInService()) {
+            busy = 1 + (int) (elected % 3);
+        } else if (busy > 0) {
+            busy--;
+        }
+    }
+
+    /**
+     * @param apache24  Apache 2.4 prefixes the flags with "Init"
+     */
+    public String getStatus(boolean apache24) {
+        if (apache24) {
+            // Draining workers still count as usable
+            return "Init" + (disabled ? " Dis" : "") + (stopped ? " Stop" : "") + (draining ? " Drn" : "")
+                    + (disabled || stopped ? "" : " Ok");
+        }
+        return disabled ? "Dis" : "Ok";
+    }
+}
@@ -0,0 +1,66 @@
+package se.mt.loadbalancerupdater.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.mt.loadbalancerupdater.Worker;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
+import se.mt.loadbalancerupdater.parser.XmlStatusParser;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a whole status page into workers per configured balancer, as done for each fetch of a host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusPageParserBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int balancers;
+
+    @Param({"10", "200", "2000"})
+    private int workers;
+
+    @Param({"APACHE_22", "APACHE_24", "APACHE_24_XML"})
+    private StatusPages.Layout layout;
+
+    private byte[] page;
+    private List<String> balancerNames;
+    private URL baseUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<SimulatedBalancer> model = SimulatedBalancer.generate(balancers, workers);
+        page = StatusPages.render(layout, "lb1.example.com", model).getBytes("UTF-8");
+        balancerNames = SimulatedBalancer.getNames(model);
+        baseUrl = new URL("http://lb1.example.com/balancer-manager");
+    }
+
+    @Benchmark
+    public OrderedMultiMap<String, Worker> parse() throws IOException {
+        if (layout == StatusPages.Layout.APACHE_24_XML) {
+            return new XmlStatusParser(balancerNames).parse(new ByteArrayInputStream(page), baseUrl);
+        }
+        return StatusPageParser.forBalancers(balancerNames)
+                .parse(new InputStreamReader(new ByteArrayInputStream(page), "ISO-8859-1"), baseUrl);
+    }
+}
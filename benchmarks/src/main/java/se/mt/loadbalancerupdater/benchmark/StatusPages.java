@@ -0,0 +1,165 @@
+package se.mt.loadbalancerupdater.benchmark;
+
+import java.util.List;
+
+/**
+ * Renders balancer-manager status pages the way mod_proxy_balancer does, for Apache 2.2 and 2.4.
+ */
+public class StatusPages {
+
+    public enum Layout {
+        APACHE_22, APACHE_24, APACHE_24_XML
+    }
+
+    private StatusPages() {
+    }
+
+    public static String render(Layout layout, String host, List<SimulatedBalancer> balancers) {
+        switch (layout) {
+            case APACHE_22:
+                return renderHtml22(host, balancers);
+            case APACHE_24:
+                return renderHtml24(host, balancers);
+            default:
+                return renderXml(balancers);
+        }
+    }
+
+    /**
+     * Renders the page for editing one worker, which is what a worker link leads to.
+     */
+    public static String renderEditForm(Layout layout, SimulatedBalancer balancer, SimulatedWorker worker) {
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("<html><head><title>Balancer Manager</title></head>\n<body>\n")
+                .append("<h3>Edit worker settings for ").append(worker.getName()).append("</h3>\n");
+        if (layout == Layout.APACHE_22) {
+            sb.append("<form method=\"GET\" action=\"/balancer-manager\">\n<table>\n")
+                    .append("<tr><td>Load factor:</td><td><input name=\"lf\" type=text value=\"1\"></td></tr>\n")
+                    .append("<tr><td>LB Set:</td><td><input name=\"ls\" type=text value=\"0\"></td></tr>\n")
+                    .append("<tr><td>Route:</td><td><input name=\"wr\" type=text value=\"").append(worker.getRoute())
+                    .append("\"></td></tr>\n")
+                    .append("<tr><td>Route Redirect:</td><td><input name=\"rr\" type=text value=\"\"></td></tr>\n")
+                    .append("<tr><td>Status:</td><td>Disabled: <input name=\"dw\" value=\"Disable\" type=radio")
+                    .append(worker.isDisabled() ? " checked" : "")
+                    .append("> | Enabled: <input name=\"dw\" value=\"Enable\" type=radio")
+                    .append(worker.isDisabled() ? "" : " checked").append("></td></tr>\n");
+        } else {
+            sb.append("<form method=\"POST\" enctype=\"application/x-www-form-urlencoded\" action=\"/balancer-manager\">\n")
+                    .append("<table><tr><td>Load factor:</td><td><input name='w_lf' id='w_lf' type=text value='1'></td></tr>\n")
+                    .append("<tr><td>LB Set:</td><td><input name='w_ls' id='w_ls' type=text value='0'></td></tr>\n")
+                    .append("<tr><td>Route:</td><td><input name='w_wr' id='w_wr' type=text value='")
+                    .append(worker.getRoute()).append("'></td></tr>\n")
+                    .append("<tr><td>Route Redirect:</td><td><input name='w_rr' id='w_rr' type=text value=''></td></tr>\n")
+                    .append("<tr><td>Disabled:</td><td><input name='w_status_D' id='w_status_D' value='1' type=radio")
+                    .append(worker.isDisabled() ? " checked" : "").append("> On <input name='w_status_D' id='w_status_D' value='0' type=radio")
+                    .append(worker.isDisabled() ? "" : " checked").append("> Off</td></tr>\n");
+        }
+        sb.append("<tr><td colspan=2><input type=submit value='Submit'></td></tr>\n</table>\n")
+                .append("<input type=hidden name='w' value='").append(worker.getName()).append("'>\n")
+                .append("<input type=hidden name='b' value='").append(balancer.getName()).append("'>\n")
+                .append("<input type=hidden name='nonce' value='").append(balancer.getNonce()).append("'>\n")
+                .append("</form>\n<hr /></body></html>\n");
+        return sb.toString();
+    }
+
+    private static String renderHtml22(String host, List<SimulatedBalancer> balancers) {
+        StringBuilder sb = new StringBuilder(1024 + balancers.size() * 512);
+        sb.append("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 3.2 Final//EN\">\n")
+                .append("<html><head><title>Balancer Manager</title></head>\n")
+                .append("<body><h1>Load Balancer Manager for ").append(host).append("</h1>\n\n")
+                .append("<dl><dt>Server Version: Apache/2.2.22 (Ubuntu)</dt>\n")
+                .append("<dt>Server Built: Mar  8 2012 21:48:41\n</dt></dl>\n");
+        for (SimulatedBalancer balancer : balancers) {
+            sb.append("<hr />\n<h3>LoadBalancer Status for balancer://").append(balancer.getName()).append("</h3>\n\n")
+                    .append("<table border=\"0\" style=\"text-align: left;\"><tr>")
+                    .append("<th>StickySession</th><th>Timeout</th><th>FailoverAttempts</th><th>Method</th>\n")
+                    .append("</tr>\n<tr><td>JSESSIONID</td><td>0</td><td>1</td>\n<td>byrequests</td>\n</table>\n<br />\n\n")
+                    .append("<table border=\"0\" style=\"text-align: left;\"><tr><th>Worker URL</th><th>Route</th>")
+                    .append("<th>RouteRedir</th><th>Factor</th><th>Set</th><th>Status</th><th>Elected</th>")
+                    .append("<th>To</th><th>From</th></tr>\n");
+            for (SimulatedWorker worker : balancer.getWorkers()) {
+                sb.append("<tr>\n<td><a href=\"/balancer-manager?b=").append(balancer.getName())
+                        .append("&w=").append(worker.getName()).append("&nonce=").append(balancer.getNonce()).append("\">")
+                        .append(worker.getName()).append("</a></td><td>").append(worker.getRoute())
+                        .append("</td><td></td><td>1</td><td>0</td><td>").append(worker.getStatus(false))
+                        .append("</td><td>").append(worker.getElected()).append("</td><td>")
+                        .append(worker.getElected() * 3).append("</td><td>").append(worker.getElected() * 41)
+                        .append("</td></tr>\n");
+            }
+            sb.append("</table>\n");
+        }
+        sb.append("<hr />\n</body></html>\n");
+        return sb.toString();
+    }
+
+    private static String renderHtml24(String host, List<SimulatedBalancer> balancers) {
+        StringBuilder sb = new StringBuilder(1024 + balancers.size() * 640);
+        sb.append("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 3.2 Final//EN\">\n")
+                .append("<html><head><title>Balancer Manager</title>\n")
+                .append("<style type='text/css'>\ntable {\n border-width: 1px;\n}\n</style>\n</head>\n")
+                .append("<body><h1>Load Balancer Manager for ").append(host).append("</h1>\n\n")
+                .append("<dl><dt>Server Version: Apache/2.4.41 (Ubuntu)</dt>\n")
+                .append("<dt>Server Built: 2020-04-13T17:19:17\n</dt>\n")
+                .append("<dt>Balancer changes will NOT be persisted on restart.</dt>")
+                .append("<dt>Balancers are inherited from main server.</dt>")
+                .append("<dt>ProxyPass settings are inherited from main server.</dt></dl>\n");
+        for (SimulatedBalancer balancer : balancers) {
+            String name = balancer.getName();
+            sb.append("<hr />\n<h3>LoadBalancer Status for <a href='/balancer-manager?b=").append(name)
+                    .append("&amp;nonce=").append(balancer.getNonce()).append("'>balancer://").append(name)
+                    .append("</a> [p").append(Integer.toHexString(name.hashCode())).append("_").append(name).append("]</h3>\n\n")
+                    .append("<table><tr><th>MaxMembers</th><th>StickySession</th><th>DisableFailover</th>")
+                    .append("<th>Timeout</th><th>FailoverAttempts</th><th>Method</th><th>Path</th><th>Active</th></tr>\n")
+                    .append("<tr><td>").append(balancer.getWorkers().size()).append(" [")
+                    .append(balancer.getWorkers().size()).append(" Used]</td>\n<td> (None) </td><td>Off</td>\n")
+                    .append("<td>0</td><td>1</td>\n<td>byrequests</td>\n<td>/").append(name).append("</td>\n")
+                    .append("<td>Yes</td>\n</table>\n<br />\n\n")
+                    .append("<table><tr><th>Worker URL</th><th>Route</th><th>RouteRedir</th><th>Factor</th>")
+                    .append("<th>Set</th><th>Status</th><th>Elected</th><th>Busy</th><th>Load</th>")
+                    .append("<th>To</th><th>From</th></tr>\n");
+            for (SimulatedWorker worker : balancer.getWorkers()) {
+                sb.append("<tr>\n<td><a href='/balancer-manager?b=").append(name)
+                        .append("&amp;w=").append(worker.getName()).append("&amp;nonce=").append(balancer.getNonce())
+                        .append("'>").append(worker.getName()).append("</a></td><td>").append(worker.getRoute())
+                        .append("</td><td></td><td>1.00</td><td>0</td><td>").append(worker.getStatus(true))
+                        .append("</td><td>").append(worker.getElected()).append("</td><td>").append(worker.getBusy())
+                        .append("</td><td>0</td><td>")
+                        .append(worker.getElected() * 3).append("</td><td>").append(worker.getElected() * 41)
+                        .append("</td></tr>\n");
+            }
+            sb.append("</table>\n");
+        }
+        sb.append("<hr />\n</body></html>\n");
+        return sb.toString();
+    }
+
+    private static String renderXml(List<SimulatedBalancer> balancers) {
+        StringBuilder sb = new StringBuilder(256 + balancers.size() * 1024);
+        sb.append("<?xml version='1.0' encoding='UTF-8' ?>\n")
+                .append("<httpd:manager xmlns:httpd='http://httpd.apache.org'>\n  <httpd:balancers>\n");
+        for (SimulatedBalancer balancer : balancers) {
+            sb.append("    <httpd:balancer>\n      <httpd:name>balancer://").append(balancer.getName())
+                    .append("</httpd:name>\n      <httpd:nonce>").append(balancer.getNonce())
+                    .append("</httpd:nonce>\n      <httpd:scolonsep>Off</httpd:scolonsep>\n")
+                    .append("      <httpd:max_attempts>1</httpd:max_attempts>\n")
+                    .append("      <httpd:lbmethod>byrequests</httpd:lbmethod>\n      <httpd:workers>\n");
+            for (SimulatedWorker worker : balancer.getWorkers()) {
+                sb.append("        <httpd:worker>\n          <httpd:name>").append(worker.getName())
+                        .append("</httpd:name>\n          <httpd:scheme>http</httpd:scheme>\n")
+                        .append("          <httpd:route>").append(worker.getRoute()).append("</httpd:route>\n")
+                        .append("          <httpd:redirect></httpd:redirect>\n          <httpd:busy>").append(worker.getBusy())
+                        .append("</httpd:busy>\n")
+                        .append("          <httpd:lbset>0</httpd:lbset>\n")
+                        .append("          <httpd:retry>60</httpd:retry>\n          <httpd:loadfactor>1</httpd:loadfactor>\n")
+                        .append("          <httpd:transferred>").append(worker.getElected() * 3)
+                        .append("</httpd:transferred>\n          <httpd:read>").append(worker.getElected() * 41)
+                        .append("</httpd:read>\n          <httpd:elected>").append(worker.getElected())
+                        .append("</httpd:elected>\n          <httpd:status>").append(worker.getStatus(true))
+                        .append("</httpd:status>\n        </httpd:worker>\n");
+            }
+            sb.append("      </httpd:workers>\n    </httpd:balancer>\n");
+        }
+        sb.append("  </httpd:balancers>\n</httpd:manager>\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package se.mt.loadbalancerupdater.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.mt.loadbalancerupdater.Apache22UpdateProtocol;
+import se.mt.loadbalancerupdater.Apache24UpdateProtocol;
+import se.mt.loadbalancerupdater.PageGetter;
+import se.mt.loadbalancerupdater.UpdateProtocol;
+import se.mt.loadbalancerupdater.Worker;
+import se.mt.loadbalancerupdater.WorkerMatcher;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+import se.mt.loadbalancerupdater.util.QueryStrings;
+
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work done between reading the status and sending the first submit: matching the workers against the
+ * search strings, grouping them by balancer and building the submit parameters of the matching ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// The benchmark only plans, but keep it away from the operator's change journal all the same
+@Fork(value = 1, jvmArgsAppend = "-Dlbupdater.journal=0")
+public class UpdatePlanningBenchmark {
+
+    @Param({"10", "200", "2000"})
+    private int workers;
+
+    @Param({"1", "20", "200"})
+    private int searchStrings;
+
+    // Plain search strings, or the same selection as globs or regular expressions
+    @Param({"plain", "glob", "regex"})
+    private String selectorKind;
+
+    @Param({"APACHE_22", "APACHE_24"})
+    private String protocolVersion;
+
+    private OrderedMultiMap<String, Worker> workerMap;
+    private List<Worker> allWorkers;
+    private List<Worker> matchingWorkers;
+    private WorkerMatcher matcher;
+    private PageGetter getter;
+    private UpdateProtocol protocol;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<SimulatedBalancer> model = SimulatedBalancer.generate(Math.max(1, workers / 40), workers);
+        List<String> balancerNames = SimulatedBalancer.getNames(model);
+        String page = StatusPages.render(StatusPages.Layout.APACHE_22, "lb1.example.com", model);
+        workerMap = StatusPageParser.forBalancers(balancerNames)
+                .parse(new StringReader(page), new URL("http://lb1.example.com/balancer-manager"));
+        allWorkers = new ArrayList<Worker>(workerMap.allValues());
+
+        List<String> selectors = new ArrayList<String>(searchStrings);
+        for (int i = 0; i < searchStrings; i++) {
+            // Spread the selected workers over the whole page
+            int workerIndex = (int) ((long) i * workers / searchStrings);
+            if (selectorKind.equals("glob")) {
+                selectors.add(WorkerMatcher.GLOB_PREFIX + "http://tomcat" + workerIndex + ".*");
+            } else if (selectorKind.equals("regex")) {
+                selectors.add(WorkerMatcher.REGEX_PREFIX + "tomcat" + workerIndex + "\\.");
+            } else {
+                selectors.add("tomcat" + workerIndex + ".");
+            }
+        }
+        matcher = WorkerMatcher.compile(selectors);
+        matchingWorkers = new ArrayList<Worker>();
+        for (Worker worker : allWorkers) {
+            if (matcher.matches(worker)) {
+                matchingWorkers.add(worker);
+            }
+        }
+
+        getter = new PageGetter("lb1.example.com", balancerNames);
+        protocol = protocolVersion.equals("APACHE_24") ? new Apache24UpdateProtocol() : new Apache22UpdateProtocol();
+    }
+
+    @Benchmark
+    public void matchWorkers(Blackhole blackhole) {
+        for (Worker worker : allWorkers) {
+            blackhole.consume(matcher.matches(worker));
+        }
+    }
+
+    @Benchmark
+    public void matchByBalancer(Blackhole blackhole) {
+        for (Map.Entry<String, Collection<Worker>> entry : workerMap.getMap().entrySet()) {
+            for (Worker worker : entry.getValue()) {
+                if (matcher.matches(worker)) {
+                    blackhole.consume(entry.getKey());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public OrderedMultiMap<String, Worker> groupByBalancer() {
+        OrderedMultiMap<String, Worker> grouped = new OrderedMultiMap<String, Worker>();
+        for (Map.Entry<String, Collection<Worker>> entry : workerMap.getMap().entrySet()) {
+            for (Worker worker : entry.getValue()) {
+                grouped.put(entry.getKey(), worker);
+            }
+        }
+        return grouped;
+    }
+
+    @Benchmark
+    public void buildSubmitParameters(Blackhole blackhole) throws Exception {
+        for (Worker worker : matchingWorkers) {
+            Map<String, String> fields = getter.getSubmitFields(worker);
+            protocol.setEnabled(fields, false);
+            blackhole.consume(QueryStrings.encode(fields));
+        }
+    }
+}
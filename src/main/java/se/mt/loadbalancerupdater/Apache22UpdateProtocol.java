@@ -0,0 +1,38 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.http.HttpTransport;
+import se.mt.loadbalancerupdater.util.QueryStrings;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Apache 2.2: the edit form is submitted with GET, and dw=Enable or dw=Disable changes the state.
+ * There is no drain or stopped mode, those disable the worker.
+ */
+public class Apache22UpdateProtocol implements UpdateProtocol {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Apache22UpdateProtocol.class);
+
+    @Override
+    public void setEnabled(Map<String, String> fields, boolean enable) {
+        fields.put("dw", enable ? "Enable" : "Disable");
+    }
+
+    @Override
+    public void setDisabled(Map<String, String> fields, DisableMode mode) {
+        if (mode != DisableMode.DISABLED) {
+            LOGGER.debug("Apache 2.2 has no {} mode, disabling {} instead", mode, fields.get("w"));
+        }
+        fields.put("dw", "Disable");
+    }
+
+    @Override
+    public void submit(HttpTransport transport, String managerUrl, Map<String, String> fields) throws IOException {
+        String url = managerUrl + "?" + QueryStrings.encode(fields);
+        LOGGER.info("About to submit: {}", url);
+        transport.getAndDiscard(url);
+    }
+}
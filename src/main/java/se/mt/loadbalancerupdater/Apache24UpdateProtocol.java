@@ -0,0 +1,48 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.http.HttpTransport;
+import se.mt.loadbalancerupdater.util.QueryStrings;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Apache 2.4: the edit form is POSTed, and each status flag has its own field,
+ * e.g. w_status_D=1 disables the worker and w_status_D=0 enables it. Drain mode is w_status_N and stopped
+ * is w_status_S. Versions without drain mode ignore its field.
+ */
+public class Apache24UpdateProtocol implements UpdateProtocol {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Apache24UpdateProtocol.class);
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+
+    @Override
+    public void setEnabled(Map<String, String> fields, boolean enable) {
+        fields.put("w_status_D", enable ? "0" : "1");
+        if (enable) {
+            fields.put("w_status_N", "0");
+            fields.put("w_status_S", "0");
+        }
+    }
+
+    @Override
+    public void setDisabled(Map<String, String> fields, DisableMode mode) {
+        // Clear the other flags, so that the worker ends up in exactly this mode
+        fields.put("w_status_D", mode == DisableMode.DISABLED ? "1" : "0");
+        fields.put("w_status_N", mode == DisableMode.DRAINING ? "1" : "0");
+        fields.put("w_status_S", mode == DisableMode.STOPPED ? "1" : "0");
+    }
+
+    @Override
+    public void submit(HttpTransport transport, String managerUrl, Map<String, String> fields) throws IOException {
+        String body = QueryStrings.encode(fields);
+        LOGGER.info("About to submit to {}: {}", managerUrl, body);
+        // Some 2.4 versions reject changes that don't come from their own page
+        transport.postAndDiscard(managerUrl, FORM_CONTENT_TYPE, body.getBytes("UTF-8"),
+                Collections.singletonMap("Referer", managerUrl));
+    }
+}
@@ -6,6 +6,7 @@ import se.mt.loadbalancerupdater.exception.BadConfigurationException;
 
 import java.io.*;
 import java.util.*;
+import java.util.regex.PatternSyntaxException;
 
 import static java.util.Arrays.*;
 
@@ -25,6 +26,9 @@ public class BalancerConfig {
 
     private List<String> balancerNames;
 
+    // Compiled from workerSearchStrings when first needed
+    private WorkerMatcher workerMatcher;
+
     private static String lastLoadPath;
 
     private static final String FILE_SEP = System.getProperty("file.separator");
@@ -57,6 +61,12 @@ public class BalancerConfig {
             throw new BadConfigurationException("No balancer names configured for config " + configName);
         }
 
+        try {
+            WorkerMatcher.compile(workerSearchStrings);
+        } catch (PatternSyntaxException e) {
+            throw new BadConfigurationException("Bad worker search string in config " + configName + ": " + e.getMessage());
+        }
+
     }
 
     public List<String> getBalancerHosts() {
@@ -71,6 +81,16 @@ public class BalancerConfig {
         return balancerNames;
     }
 
+    /**
+     * @return A matcher for all worker search strings, compiled once
+     */
+    public synchronized WorkerMatcher getWorkerMatcher() {
+        if (workerMatcher == null) {
+            workerMatcher = WorkerMatcher.compile(workerSearchStrings);
+        }
+        return workerMatcher;
+    }
+
     public String getConfigName() {
         return configName;
     }
@@ -79,8 +99,9 @@ public class BalancerConfig {
         this.balancerHosts = balancerHosts;
     }
 
-    public void setWorkerSearchStrings(List<String> workerSearchStrings) {
+    public synchronized void setWorkerSearchStrings(List<String> workerSearchStrings) {
         this.workerSearchStrings = workerSearchStrings;
+        this.workerMatcher = null;
     }
 
     public void setBalancerNames(List<String> balancerNames) {
@@ -143,6 +164,33 @@ public class BalancerConfig {
 
     }
 
+    /**
+     * @return True if the other config has the same name, hosts, search strings and balancer names
+     */
+    public boolean hasSameSettings(BalancerConfig other) {
+        return configName.equals(other.configName) && equal(balancerHosts, other.balancerHosts)
+                && equal(workerSearchStrings, other.workerSearchStrings) && equal(balancerNames, other.balancerNames);
+    }
+
+    private static boolean equal(List<String> a, List<String> b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Merges configs read again from the file into the ones in use. Configs whose settings didn't change
+     * are kept as they are, so that whatever is keyed by them stays valid.
+     *
+     * @return The configs to use from now on, in the order of newConfigs
+     */
+    public static List<BalancerConfig> merge(List<BalancerConfig> oldConfigs, List<BalancerConfig> newConfigs) {
+        List<BalancerConfig> merged = new ArrayList<BalancerConfig>(newConfigs.size());
+        for (BalancerConfig newConfig : newConfigs) {
+            BalancerConfig oldConfig = getConfigByName(oldConfigs, newConfig.configName);
+            merged.add(oldConfig != null && oldConfig.hasSameSettings(newConfig) ? oldConfig : newConfig);
+        }
+        return merged;
+    }
+
     public static String getDefaultConfigPath() {
         String userHome = System.getProperty("user.home");
         return userHome + FILE_SEP + DEFAULT_CONFIG_FILENAME;
@@ -2,19 +2,24 @@ package se.mt.loadbalancerupdater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.metrics.TrafficSeries;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
+import se.mt.loadbalancerupdater.util.NamedThreadFactory;
 import se.mt.loadbalancerupdater.util.OrderedMultiMap;
 
 import javax.swing.*;
 import javax.swing.border.CompoundBorder;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.EtchedBorder;
-import javax.swing.text.Document;
+import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 import java.util.List;
 
@@ -23,24 +28,51 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BalancerPanel.class);
 
+    private static final int DEFAULT_VIEW_CACHE_SIZE = 4;
+
     public String getTitle() {
         return "Balancer Manager Updater";
     }
 
+    private List<BalancerConfig> configs;
     private BalancerConfig selectedConfig;
-    private java.util.List<JEditorPane> htmlPanes = new ArrayList<JEditorPane>();
+    private JComboBox configNameCombo;
+    // Set while the combo box is filled in by code, so that it doesn't count as the user picking a config
+    private boolean updatingCombo;
+    private WorkerTableModel workerTableModel;
     private JPanel currentMainPanel;
-
-    public BalancerPanel(List<BalancerConfig> configs, ActionListener configButtonListener) throws HeadlessException {
+    private OperationEngine operationEngine;
+    private StatusPoller statusPoller;
+    private StatusChangeListener statusChangeListener = new PollerListener();
+    private JLabel statusLabel = new JLabel(" ");
+    private List<JButton> operationButtons = new ArrayList<JButton>();
+    // The panels of the most recently shown configs, least recently shown first
+    private final Map<BalancerConfig, ConfigView> configViews = new LinkedHashMap<BalancerConfig, ConfigView>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BalancerConfig, ConfigView> eldest) {
+            return size() > Settings.getInt(Settings.VIEW_CACHE_SIZE, DEFAULT_VIEW_CACHE_SIZE);
+        }
+    };
+    private JButton rollingButton;
+    private JButton restoreButton;
+    private final long createdTime = System.currentTimeMillis();
+    private boolean painted;
+
+    public BalancerPanel(List<BalancerConfig> configs, ActionListener configButtonListener,
+                         OperationEngine operationEngine, StatusPoller statusPoller) throws HeadlessException {
+        this.operationEngine = operationEngine;
+        this.statusPoller = statusPoller;
+        statusPoller.addListener(statusChangeListener);
         setLayout(new BorderLayout());
-        createTopPanel(configs, configButtonListener);
+        this.configs = configs;
+        createTopPanel(configButtonListener);
         selectedConfig = configs.iterator().next();
         updateMainPanel();
     }
 
     /**
-     * Creates/updates the main panel containing the actual buttons and displays,
-     * to reflect selectedConfig
+     * Shows the main panel for selectedConfig. Panels of recently shown configs are kept, with the status they
+     * showed, so switching back to one is instant; its status is then refreshed in the background.
      */
     private void updateMainPanel() {
 
@@ -49,10 +81,39 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
             remove(currentMainPanel);
         }
 
-        JPanel mainPanel = new JPanel();
-        currentMainPanel = mainPanel;
+        ConfigView view = configViews.get(selectedConfig);
+        boolean cached = view != null;
+        if (!cached) {
+            view = createConfigView();
+            configViews.put(selectedConfig, view);
+        }
+        currentMainPanel = view.panel;
+        workerTableModel = view.tableModel;
+        operationButtons = view.operationButtons;
+        // Keep the buttons disabled if an operation on another config is still running
+        for (JButton button : operationButtons) {
+            button.setEnabled(rollingButton.isEnabled());
+        }
+        add(currentMainPanel, BorderLayout.CENTER);
+        reloadStatus(false, !cached);
 
-        add(mainPanel, BorderLayout.CENTER);
+        statusPoller.unwatchAll();
+        for (String host : selectedConfig.getBalancerHosts()) {
+            statusPoller.watch(host, selectedConfig.getBalancerNames());
+        }
+
+        currentMainPanel.validate();
+        this.validate();
+        repaint();
+
+        LOGGER.info("mainPanel size {}, cached {}", currentMainPanel.getSize(), cached);
+    }
+
+    /**
+     * Creates the buttons and the worker table for selectedConfig.
+     */
+    private ConfigView createConfigView() {
+        JPanel mainPanel = new JPanel();
 
         mainPanel.setLayout(new BoxLayout(mainPanel, BoxLayout.Y_AXIS));
         mainPanel.setBorder(new CompoundBorder(new EtchedBorder(), new EmptyBorder(5, 5, 5, 5)));
@@ -62,6 +123,7 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
         mainPanel.add(topBox);
         mainPanel.add(bottomBox);
 
+        List<JButton> buttons = new ArrayList<JButton>();
         List<String> searchStrings = selectedConfig.getWorkerSearchStrings();
         for (String searchString : searchStrings) {
             Box row = Box.createHorizontalBox();
@@ -70,37 +132,29 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
             row.add(label);
             JButton enableButton = new JButton("Enable");
             JButton disableButton = new JButton("Disable");
-            enableButton.addActionListener(new EnableDisableButtonActionListener(searchString, true));
-            disableButton.addActionListener(new EnableDisableButtonActionListener(searchString, false));
+            JButton drainButton = new JButton("Drain");
+            drainButton.setToolTipText("Drain mode on Apache 2.4, disable on 2.2, then wait until no requests are busy");
+            enableButton.addActionListener(new EnableDisableButtonActionListener(searchString, true, null));
+            disableButton.addActionListener(new EnableDisableButtonActionListener(searchString, false, null));
+            drainButton.addActionListener(new EnableDisableButtonActionListener(searchString, false, DisableMode.DRAINING));
+            buttons.add(enableButton);
+            buttons.add(disableButton);
+            buttons.add(drainButton);
             row.add(enableButton);
             row.add(disableButton);
+            row.add(drainButton);
             row.add(Box.createHorizontalGlue());
             topBox.add(row);
         }
 
-        List<String> balancerHosts = selectedConfig.getBalancerHosts();
-        htmlPanes.clear();
-
-        for (String balancerHost : balancerHosts) {
-            Box browserBox = new Box(BoxLayout.Y_AXIS);
-            //browserBox.setBorder(new EmptyBorder(5, 5, 5, 5));
-            String urlString = BalancerConfig.getBalancerManagerUrl(balancerHost);
-            try {
-                JEditorPane htmlPane = new JEditorPane(urlString);
-                htmlPane.setBorder(new EmptyBorder(5, 5, 5, 5));
-                htmlPanes.add(htmlPane);
-                htmlPane.setEditable(false);
-                browserBox.add(new JScrollPane(htmlPane));
-                bottomBox.add(browserBox);
-            } catch (IOException ioe) {
-                throw new RuntimeException(ioe);
-            }
-        }
-
-        mainPanel.validate();
-        this.validate();
+        WorkerTableModel tableModel = new WorkerTableModel(selectedConfig.getBalancerHosts());
+        JTable workerTable = new JTable(tableModel);
+        workerTable.setDefaultRenderer(Object.class, new StatusCellRenderer());
+        workerTable.setDefaultRenderer(TrafficSeries.class, new SparklineCellRenderer());
+        workerTable.getColumnModel().getColumn(WorkerTableModel.TRAFFIC_COLUMN).setPreferredWidth(160);
+        bottomBox.add(new JScrollPane(workerTable));
 
-        LOGGER.info("mainPanel size {}", mainPanel.getSize());
+        return new ConfigView(mainPanel, tableModel, buttons);
     }
 
     /**
@@ -108,7 +162,7 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
      * @param configs                   List of configurations
      * @param configButtonListener      Callback for when you press the "Configure" button
      */
-    private void createTopPanel(final List<BalancerConfig> configs, ActionListener configButtonListener) {
+    private void createTopPanel(ActionListener configButtonListener) {
         JPanel topPanel = new JPanel();
         BoxLayout boxLayout = new BoxLayout(topPanel, BoxLayout.Y_AXIS);
         topPanel.setLayout(boxLayout);
@@ -118,9 +172,10 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
         row1.setBorder(new EmptyBorder(5, 5, 5, 5));
         row1.add(new JLabel("Select configuration"));
         row1.add(Box.createGlue());
+        row1.add(statusLabel);
         topPanel.add(row1);
 
-        JComboBox configNameCombo = new JComboBox();
+        configNameCombo = new JComboBox();
         configNameCombo.setMaximumSize(new Dimension(200, 40));
 
         Box row2 = Box.createHorizontalBox();
@@ -131,10 +186,37 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
         refreshButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
-                reloadHtmlPanes();
+                reloadStatus(true, false);
             }
         });
         row2.add(refreshButton);
+        rollingButton = new JButton("Rolling update");
+        rollingButton.setAlignmentX(Component.RIGHT_ALIGNMENT);
+        rollingButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                startRollingUpdate();
+            }
+        });
+        row2.add(rollingButton);
+        JButton snapshotButton = new JButton("Save snapshot");
+        snapshotButton.setAlignmentX(Component.RIGHT_ALIGNMENT);
+        snapshotButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                saveSnapshot();
+            }
+        });
+        row2.add(snapshotButton);
+        restoreButton = new JButton("Restore snapshot");
+        restoreButton.setAlignmentX(Component.RIGHT_ALIGNMENT);
+        restoreButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                restoreSnapshot();
+            }
+        });
+        row2.add(restoreButton);
         JButton configButton = new JButton("Configure");
         configButton.addActionListener(configButtonListener);
         configButton.setAlignmentX(Component.RIGHT_ALIGNMENT);
@@ -149,8 +231,8 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
         configNameCombo.addItemListener(new ItemListener() {
             @Override
             public void itemStateChanged(ItemEvent itemEvent) {
-                if (itemEvent.getStateChange() == ItemEvent.SELECTED) {
-                    switchConfig(itemEvent, configs);
+                if (itemEvent.getStateChange() == ItemEvent.SELECTED && !updatingCombo) {
+                    switchConfig(itemEvent);
                 }
             }
         });
@@ -159,24 +241,200 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
 
     }
 
-    private void switchConfig(ItemEvent itemEvent, List<BalancerConfig> configs) {
+    private void switchConfig(ItemEvent itemEvent) {
         String name = (String) itemEvent.getItem();
         LOGGER.debug("User selected config {}", name);
         selectedConfig = BalancerConfig.getConfigByName(configs, name);
         updateMainPanel();
     }
 
-    private void reloadHtmlPanes() {
-        Iterator<String> it = selectedConfig.getBalancerHosts().iterator();
-        for (JEditorPane htmlPane : htmlPanes) {
-            Document doc = htmlPane.getDocument();
-            doc.putProperty(Document.StreamDescriptionProperty, null);
-            try {
-                String urlString = BalancerConfig.getBalancerManagerUrl(it.next());
-                htmlPane.setPage(urlString);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    /**
+     * Switches to configs read again from the config file, see BalancerConfig.merge(). Configs that are
+     * the same objects as before keep their prepared panels and the others' are thrown away. The selected
+     * config's panel is only rebuilt if its settings changed.
+     */
+    public void updateConfigs(List<BalancerConfig> newConfigs) {
+        configs = newConfigs;
+        for (Iterator<BalancerConfig> it = configViews.keySet().iterator(); it.hasNext(); ) {
+            if (!newConfigs.contains(it.next())) {
+                it.remove();
+            }
+        }
+
+        BalancerConfig selected = newConfigs.contains(selectedConfig) ? selectedConfig
+                : BalancerConfig.getConfigByName(newConfigs, selectedConfig.getConfigName());
+        if (selected == null) {
+            selected = newConfigs.get(0);
+        }
+        updatingCombo = true;
+        try {
+            configNameCombo.removeAllItems();
+            for (String configName : BalancerConfig.getConfigNames(newConfigs)) {
+                configNameCombo.addItem(configName);
             }
+            configNameCombo.setSelectedItem(selected.getConfigName());
+        } finally {
+            updatingCombo = false;
+        }
+
+        if (selected != selectedConfig) {
+            LOGGER.info("Config {} changed, rebuilding its panel", selected.getConfigName());
+            selectedConfig = selected;
+            updateMainPanel();
+        }
+    }
+
+    /**
+     * Shows the latest status of each host. The hosts are read in the background and each one's rows are
+     * filled in as soon as it answers, so a slow or dead balancer only holds up its own rows.
+     * Pages that are still in the StatusCache are not fetched again, unless forceFetch is set.
+     *
+     * @param placeholders  Show "Loading..." for each host until it is read, instead of keeping the current rows
+     */
+    private void reloadStatus(final boolean forceFetch, boolean placeholders) {
+        final WorkerTableModel tableModel = workerTableModel;
+        final List<String> balancerNames = selectedConfig.getBalancerNames();
+        List<String> hosts = selectedConfig.getBalancerHosts();
+        if (placeholders) {
+            for (String host : hosts) {
+                tableModel.setMessage(host, "Loading...");
+            }
+        }
+        final long start = System.currentTimeMillis();
+        operationEngine.execute(hosts, new HostTask() {
+            @Override
+            public int run(final String host) throws Exception {
+                StatusCache cache = StatusCache.getDefault();
+                StatusSnapshot snapshot = forceFetch ? cache.refresh(host) : cache.get(host);
+                final OrderedMultiMap<String, Worker> workers = snapshot.getWorkers(balancerNames);
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        tableModel.setWorkers(host, workers);
+                    }
+                });
+                return 0;
+            }
+        }, new EdtOperationListener(new OperationListener() {
+            @Override
+            public void hostStarted(String host) {
+            }
+
+            @Override
+            public void hostCompleted(String host, int workersUpdated) {
+            }
+
+            @Override
+            public void hostFailed(String host, Exception e) {
+                LOGGER.warn("Could not read status of " + host, e);
+                tableModel.setMessage(host, "Error: " + e.getMessage());
+            }
+
+            @Override
+            public void operationCompleted(OperationResult result) {
+                LOGGER.info("Status of {} hosts loaded in {} ms, {} ms after start",
+                        new Object[]{result.getHosts().size(), System.currentTimeMillis() - start, getMillisSinceStart()});
+            }
+        }));
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!painted) {
+            painted = true;
+            LOGGER.info("First paint {} ms after the panel was created, {} ms after start",
+                    System.currentTimeMillis() - createdTime, getMillisSinceStart());
+        }
+    }
+
+    private static long getMillisSinceStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    /**
+     * Stops background polling for this panel. Call this when the panel is thrown away.
+     */
+    public void close() {
+        statusPoller.removeListener(statusChangeListener);
+        statusPoller.unwatchAll();
+    }
+
+    /**
+     * Moves changes found by the StatusPoller over to the table, on the event dispatch thread.
+     */
+    private class PollerListener implements StatusChangeListener {
+        @Override
+        public void workersChanged(final String host, final List<WorkerChange> changes,
+                                   final OrderedMultiMap<String, Worker> workers) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (workerTableModel.hasHost(host)) {
+                        workerTableModel.updateWorkers(host, changes, workers);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void trafficSampled(final String host) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (workerTableModel.hasHost(host)) {
+                        workerTableModel.trafficUpdated(host);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void pollFailed(final String host, final Exception e) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (workerTableModel.hasHost(host)) {
+                        workerTableModel.setMessage(host, "Error: " + e.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * The prepared main panel of one config, with the table showing its last known status.
+     */
+    private static class ConfigView {
+        private final JPanel panel;
+        private final WorkerTableModel tableModel;
+        private final List<JButton> operationButtons;
+
+        ConfigView(JPanel panel, WorkerTableModel tableModel, List<JButton> operationButtons) {
+            this.panel = panel;
+            this.tableModel = tableModel;
+            this.operationButtons = operationButtons;
+        }
+    }
+
+    /**
+     * Colors the status column: green for workers that get requests, red for the others and for host messages.
+     */
+    private static class StatusCellRenderer extends DefaultTableCellRenderer {
+        private static final Color OK_COLOR = new Color(0, 128, 0);
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            Component component = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+            if (!isSelected) {
+                component.setForeground(table.getForeground());
+                if (table.convertColumnIndexToModel(column) == WorkerTableModel.STATUS_COLUMN && value != null) {
+                    Worker worker = ((WorkerTableModel) table.getModel()).getWorker(table.convertRowIndexToModel(row));
+                    component.setForeground(worker != null && worker.isUsable() ? OK_COLOR : Color.RED);
+                }
+            }
+            return component;
         }
     }
 
@@ -184,48 +442,390 @@ public class BalancerPanel extends JPanel implements ApplicationPanel {
 
         private String searchString;
         private boolean enable;
+        private DisableMode drainMode;
 
-        EnableDisableButtonActionListener(String searchString, boolean enable) {
+        /**
+         * @param drainMode     Disable in this mode and wait for the workers to drain, or null to just update
+         */
+        EnableDisableButtonActionListener(String searchString, boolean enable, DisableMode drainMode) {
             this.searchString = searchString;
             this.enable = enable;
+            this.drainMode = drainMode;
         }
 
         @Override
         public void actionPerformed(ActionEvent actionEvent) {
-            updateHost(enable, searchString);
-            reloadHtmlPanes();
+            updateHosts(enable, searchString, drainMode);
         }
     }
 
-    private void updateHost(boolean enable, String searchString) {
+    /**
+     * Starts the update on all hosts in the background and reports progress in the status label.
+     * When all hosts are done, the updated workers are verified.
+     *
+     * @param drainMode     Disable in this mode and, after verifying, wait until the workers have no busy requests.
+     *                      Null to disable normally.
+     */
+    private void updateHosts(boolean enable, String searchString, final DisableMode drainMode) {
+        final String description = (enable ? "Enabling " : drainMode != null ? "Draining " : "Disabling ") + searchString;
+        final List<String> hosts = selectedConfig.getBalancerHosts();
 
-        try {
+        setOperationButtonsEnabled(false);
+        statusLabel.setText(description + "...");
 
-            java.util.List<String> hosts = selectedConfig.getBalancerHosts();
+        final HostUpdater hostUpdater = new HostUpdater(operationEngine, selectedConfig.getBalancerNames(),
+                selectedConfig.getWorkerMatcher().select(Collections.singletonList(searchString)), enable);
+        if (drainMode != null) {
+            hostUpdater.setDisableMode(drainMode);
+        }
+        operationEngine.execute(hosts, hostUpdater, new EdtOperationListener(new OperationListener() {
+            private int hostsDone;
 
-            for (String host : hosts) {
-                PageGetter getter = new PageGetter(host, selectedConfig.getBalancerNames());
-
-                OrderedMultiMap<String, Worker> workerMap = getter.getWorkers();
-
-                Map<String, Collection<Worker>> map = workerMap.getMap();
-                Set<String> balancers = map.keySet();
-                for (String balancer : balancers) {
-                    Collection<Worker> workers = map.get(balancer);
-                    for (Worker worker : workers) {
-                        if (worker.getName().contains(searchString)) {
-                            Map<String, String> fields = getter.getSubmitFieldsForWorker(worker);
-                            fields.put("dw", enable ? "Enable" : "Disable");
-                            getter.submit(fields);
+            @Override
+            public void hostStarted(String host) {
+            }
+
+            @Override
+            public void hostCompleted(String host, int workersUpdated) {
+                statusLabel.setText(description + ": " + ++hostsDone + "/" + hosts.size() + " hosts done");
+            }
+
+            @Override
+            public void hostFailed(String host, Exception e) {
+                statusLabel.setText(description + ": " + ++hostsDone + "/" + hosts.size() + " hosts done, " + host + " failed");
+            }
+
+            @Override
+            public void operationCompleted(OperationResult result) {
+                statusLabel.setText(description + ": " + result.getTotalUpdatedWorkers() + " workers updated in "
+                        + result.getElapsedMillis() + " ms, verifying...");
+                if (!result.isSuccessful()) {
+                    showFailures(description, result.getFailures());
+                }
+                verifyUpdate(description, hostUpdater, drainMode != null);
+            }
+        }));
+    }
+
+    /**
+     * Re-reads the updated hosts in the background until the submitted workers show the new state,
+     * updating their rows as they are confirmed, and reports the workers that never changed.
+     *
+     * @param awaitDrained  Then wait until the workers have no busy requests, see DrainWatcher
+     */
+    private void verifyUpdate(final String description, final HostUpdater hostUpdater, final boolean awaitDrained) {
+        final WorkerTableModel tableModel = workerTableModel;
+        final List<String> balancerNames = selectedConfig.getBalancerNames();
+        final SubmitVerifier verifier = new SubmitVerifier(operationEngine, balancerNames);
+        final VerificationListener rowUpdater = new VerificationListener() {
+            @Override
+            public void workersVerified(final String host, final List<VerifiedWorker> workers) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (VerifiedWorker verified : workers) {
+                            tableModel.updateWorker(host, verified.getBalancer(), verified.getWorker());
                         }
                     }
+                });
+            }
+        };
+        new NamedThreadFactory("submit-verifier").newThread(new Runnable() {
+            @Override
+            public void run() {
+                List<VerifiedWorker> verified;
+                try {
+                    verified = verifier.verify(hostUpdater.getTargets(), hostUpdater.isEnable(), rowUpdater);
+                } catch (InterruptedException e) {
+                    verified = Collections.emptyList();
+                }
+                final List<VerifiedWorker> results = verified;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        showVerification(description, results);
+                        if (!awaitDrained) {
+                            setOperationButtonsEnabled(true);
+                        } else {
+                            statusLabel.setText(statusLabel.getText() + ", waiting for them to drain...");
+                        }
+                        statusPoller.pollSoon(hostUpdater.getTargets().keySet());
+                    }
+                });
+                if (awaitDrained) {
+                    awaitDrained(description, balancerNames, hostUpdater);
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Blocks until the updated workers have no busy requests, then reports it.
+     */
+    private void awaitDrained(final String description, List<String> balancerNames, HostUpdater hostUpdater) {
+        Map<String, OrderedMultiMap<String, Worker>> targets = hostUpdater.getTargets();
+        OperationResult drained;
+        try {
+            drained = new DrainWatcher(operationEngine, balancerNames, targets).await();
+        } catch (InterruptedException e) {
+            return;
+        }
+        final OperationResult result = drained;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                statusLabel.setText(description + ": " + result.getTotalUpdatedWorkers() + " workers idle after "
+                        + result.getElapsedMillis() + " ms");
+                if (!result.isSuccessful()) {
+                    showFailures(description, result.getFailures());
+                }
+                setOperationButtonsEnabled(true);
+            }
+        });
+    }
+
+    private void showVerification(String description, List<VerifiedWorker> results) {
+        int confirmed = 0;
+        StringBuilder failures = new StringBuilder();
+        for (VerifiedWorker verified : results) {
+            if (verified.isConfirmed()) {
+                confirmed++;
+            } else {
+                failures.append(verified.getHost()).append(" ")
+                        .append(StatusPageParser.getBalancerName(verified.getBalancer())).append(" ")
+                        .append(verified.getWorker().getName()).append(": ")
+                        .append(verified.getWorker().getStatus()).append("\n");
+            }
+        }
+        statusLabel.setText(description + ": " + confirmed + " of " + results.size() + " workers confirmed");
+        if (failures.length() > 0) {
+            JOptionPane.showMessageDialog(this, description + " did not take effect on:\n" + failures,
+                    "Update not confirmed", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    private void setOperationButtonsEnabled(boolean enabled) {
+        for (JButton button : operationButtons) {
+            button.setEnabled(enabled);
+        }
+        rollingButton.setEnabled(enabled);
+        restoreButton.setEnabled(enabled);
+    }
+
+    /**
+     * Reads the state of all workers of the selected config in the background and saves it to a file
+     * picked by the user.
+     */
+    private void saveSnapshot() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(selectedConfig.getConfigName() + ".snapshot"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final File file = chooser.getSelectedFile();
+        final BalancerConfig config = selectedConfig;
+        statusLabel.setText("Saving snapshot of " + config.getConfigName() + "...");
+        new NamedThreadFactory("snapshot").newThread(new Runnable() {
+            @Override
+            public void run() {
+                String text;
+                Exception failure = null;
+                try {
+                    ClusterSnapshot snapshot = ClusterSnapshot.capture(operationEngine, config);
+                    snapshot.save(file);
+                    text = "Saved " + snapshot.getWorkerCount() + " workers to " + file.getName();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not save snapshot to " + file, e);
+                    text = "Snapshot not saved";
+                    failure = e;
+                } catch (InterruptedException e) {
+                    return;
                 }
+                final String status = text;
+                final Exception error = failure;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        statusLabel.setText(status);
+                        if (error != null) {
+                            JOptionPane.showMessageDialog(BalancerPanel.this, error.getMessage(), status,
+                                    JOptionPane.ERROR_MESSAGE);
+                        }
+                    }
+                });
             }
+        }).start();
+    }
+
+    /**
+     * Puts all hosts of a snapshot file back to the saved state, submitting only the workers that differ.
+     */
+    private void restoreSnapshot() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final ClusterSnapshot snapshot;
+        try {
+            snapshot = ClusterSnapshot.load(chooser.getSelectedFile());
         } catch (IOException e) {
-            throw new RuntimeException(e);
-        } catch (org.htmlparser.util.ParserException e) {
-            throw new RuntimeException(e);
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Could not read snapshot", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String question = "Restore " + snapshot.getWorkerCount() + " workers on " + snapshot.getHosts().size()
+                + " hosts to their state at " + new Date(snapshot.getCaptureTime()) + "?";
+        if (!selectedConfig.getConfigName().equals(snapshot.getConfigName())) {
+            question = "The snapshot is of " + snapshot.getConfigName() + ", not " + selectedConfig.getConfigName()
+                    + ".\n" + question;
+        }
+        if (JOptionPane.showConfirmDialog(this, question, "Restore snapshot", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        final String description = "Restoring snapshot";
+        setOperationButtonsEnabled(false);
+        statusLabel.setText(description + "...");
+        operationEngine.execute(snapshot.getHosts(), new SnapshotRestorer(operationEngine, snapshot),
+                new EdtOperationListener(new OperationListener() {
+            @Override
+            public void hostStarted(String host) {
+            }
+
+            @Override
+            public void hostCompleted(String host, int workersUpdated) {
+            }
+
+            @Override
+            public void hostFailed(String host, Exception e) {
+            }
+
+            @Override
+            public void operationCompleted(OperationResult result) {
+                statusLabel.setText(description + ": " + result.getTotalUpdatedWorkers() + " workers updated in "
+                        + result.getElapsedMillis() + " ms");
+                setOperationButtonsEnabled(true);
+                if (!result.isSuccessful()) {
+                    showFailures(description, result.getFailures());
+                }
+                reloadStatus(true, false);
+                statusPoller.pollSoon(snapshot.getHosts());
+            }
+        }));
+    }
+
+    /**
+     * Asks for the wave size and runs a RollingOperation over all search strings in the background.
+     * Between disabling and enabling each wave a dialog waits for the operator to do their thing.
+     */
+    private void startRollingUpdate() {
+        String answer = JOptionPane.showInputDialog(this, "Number of search strings to take out of service at a time:", "1");
+        if (answer == null) {
+            return;
+        }
+        int waveSize;
+        try {
+            waveSize = Integer.parseInt(answer.trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Not a number: " + answer);
+            return;
+        }
+
+        final BalancerConfig config = selectedConfig;
+        final RollingOperation operation = new RollingOperation(operationEngine, config, waveSize, 0.5,
+                new DialogWaveHook(), new RollingStatusListener(config));
+        try {
+            operation.planWaves();
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage());
+            return;
+        }
+
+        setOperationButtonsEnabled(false);
+        new NamedThreadFactory("rolling-update").newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    operation.run();
+                } catch (Exception e) {
+                    // Already reported to the listener
+                }
+            }
+        }).start();
+    }
+
+    private class DialogWaveHook implements WaveHook {
+        @Override
+        public void run(final List<String> searchStrings) throws Exception {
+            final int[] choice = new int[1];
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    choice[0] = JOptionPane.showConfirmDialog(BalancerPanel.this,
+                            searchStrings + " are out of service.\nPress OK to enable them again, Cancel to stop.",
+                            "Rolling update", JOptionPane.OK_CANCEL_OPTION);
+                }
+            });
+            if (choice[0] != JOptionPane.OK_OPTION) {
+                throw new InterruptedException("Stopped by user, " + searchStrings + " left disabled");
+            }
+        }
+    }
+
+    private class RollingStatusListener implements RollingListener {
+        // The config being updated, selectedConfig belongs to the EDT and may change during the update
+        private final BalancerConfig config;
+
+        RollingStatusListener(BalancerConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public void waveStarted(final int waveNumber, final int waveCount, final List<String> searchStrings) {
+            showStatus("Wave " + waveNumber + "/" + waveCount + " " + searchStrings);
+        }
+
+        @Override
+        public void phaseStarted(int waveNumber, RollingOperation.Phase phase) {
+            showStatus("Wave " + waveNumber + ": " + phase.name().toLowerCase().replace('_', ' '));
+            if (phase == RollingOperation.Phase.DRAINING || phase == RollingOperation.Phase.VERIFYING) {
+                statusPoller.pollSoon(config.getBalancerHosts());
+            }
+        }
+
+        @Override
+        public void finished(final int wavesCompleted, final Exception failure) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    setOperationButtonsEnabled(true);
+                    if (failure == null) {
+                        statusLabel.setText("Rolling update done, " + wavesCompleted + " waves");
+                    } else {
+                        statusLabel.setText("Rolling update stopped after " + wavesCompleted + " waves");
+                        JOptionPane.showMessageDialog(BalancerPanel.this, failure.getMessage(), "Rolling update stopped",
+                                JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            });
+        }
+
+        private void showStatus(final String text) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    statusLabel.setText(text);
+                }
+            });
+        }
+    }
+
+    private void showFailures(String description, Map<String, Exception> failures) {
+        StringBuilder sb = new StringBuilder(description).append(" failed on:\n");
+        for (Map.Entry<String, Exception> entry : failures.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue().getMessage()).append("\n");
         }
+        JOptionPane.showMessageDialog(this, sb.toString(), "Update failed", JOptionPane.ERROR_MESSAGE);
     }
 
 
@@ -0,0 +1,190 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of every worker on every host of a BalancerConfig at one point in time, for putting things
+ * back the way they were with SnapshotRestorer.
+ * <p/>
+ * Saved as UTF-8 text with tab separated fields: a few header lines, then one line per worker with
+ * host, balancer heading, worker name and status.
+ */
+public class ClusterSnapshot {
+
+    private static final String FIRST_LINE = "# Balancer manager updater snapshot";
+
+    private final String configName;
+    private final long captureTime;
+    private final List<String> balancerNames;
+    private final Map<String, OrderedMultiMap<String, Worker>> hostWorkers;
+
+    public ClusterSnapshot(String configName, long captureTime, List<String> balancerNames,
+                           Map<String, OrderedMultiMap<String, Worker>> hostWorkers) {
+        this.configName = configName;
+        this.captureTime = captureTime;
+        this.balancerNames = balancerNames;
+        this.hostWorkers = hostWorkers;
+    }
+
+    /**
+     * Reads the current status of all hosts of the config at the same time.
+     *
+     * @throws IOException  If any host could not be read, since a partial snapshot can't be restored safely
+     */
+    public static ClusterSnapshot capture(OperationEngine operationEngine, BalancerConfig config)
+            throws IOException, InterruptedException {
+        final List<String> balancerNames = config.getBalancerNames();
+        final Map<String, OrderedMultiMap<String, Worker>> hostWorkers =
+                Collections.synchronizedMap(new LinkedHashMap<String, OrderedMultiMap<String, Worker>>());
+        long captureTime = System.currentTimeMillis();
+        OperationResult result = operationEngine.execute(config.getBalancerHosts(), new HostTask() {
+            @Override
+            public int run(String host) throws Exception {
+                OrderedMultiMap<String, Worker> workers = new PageGetter(host, balancerNames).getWorkers(true);
+                hostWorkers.put(host, workers);
+                return workers.allValues().size();
+            }
+        }, null).await();
+        if (!result.isSuccessful()) {
+            Map.Entry<String, Exception> failure = result.getFailures().entrySet().iterator().next();
+            IOException e = new IOException("Could not read " + result.getFailures().keySet() + ": "
+                    + failure.getValue().getMessage());
+            e.initCause(failure.getValue());
+            throw e;
+        }
+
+        // In the order of the config, not the order the hosts answered
+        Map<String, OrderedMultiMap<String, Worker>> ordered = new LinkedHashMap<String, OrderedMultiMap<String, Worker>>();
+        for (String host : config.getBalancerHosts()) {
+            ordered.put(host, hostWorkers.get(host));
+        }
+        return new ClusterSnapshot(config.getConfigName(), captureTime, balancerNames, ordered);
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public List<String> getBalancerNames() {
+        return balancerNames;
+    }
+
+    public List<String> getHosts() {
+        return new ArrayList<String>(hostWorkers.keySet());
+    }
+
+    /**
+     * @return Balancer heading mapped to the workers of the host, or null if the host is not in the snapshot
+     */
+    public OrderedMultiMap<String, Worker> getWorkers(String host) {
+        return hostWorkers.get(host);
+    }
+
+    public int getWorkerCount() {
+        int count = 0;
+        for (OrderedMultiMap<String, Worker> workers : hostWorkers.values()) {
+            count += workers.allValues().size();
+        }
+        return count;
+    }
+
+    public void save(File file) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.println(FIRST_LINE);
+            writer.println("config\t" + configName);
+            writer.println("time\t" + captureTime);
+            writer.println("balancers\t" + join(balancerNames));
+            for (Map.Entry<String, OrderedMultiMap<String, Worker>> host : hostWorkers.entrySet()) {
+                writer.println("host\t" + host.getKey());
+                for (Map.Entry<String, Collection<Worker>> balancer : host.getValue().getMap().entrySet()) {
+                    for (Worker worker : balancer.getValue()) {
+                        writer.println("worker\t" + host.getKey() + "\t" + balancer.getKey() + "\t" + worker.getName()
+                                + "\t" + (worker.getStatus() != null ? worker.getStatus() : ""));
+                    }
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            throw new IOException("Could not write snapshot to " + file);
+        }
+    }
+
+    public static ClusterSnapshot load(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            if (!FIRST_LINE.equals(reader.readLine())) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            String configName = null;
+            long captureTime = 0;
+            List<String> balancerNames = new ArrayList<String>();
+            Map<String, OrderedMultiMap<String, Worker>> hostWorkers = new LinkedHashMap<String, OrderedMultiMap<String, Worker>>();
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] fields = line.split("\t", -1);
+                try {
+                    if (fields[0].equals("config")) {
+                        configName = fields[1];
+                    } else if (fields[0].equals("time")) {
+                        captureTime = Long.parseLong(fields[1]);
+                    } else if (fields[0].equals("balancers")) {
+                        balancerNames.addAll(Arrays.asList(fields[1].split(",")));
+                    } else if (fields[0].equals("host")) {
+                        hostWorkers.put(fields[1], new OrderedMultiMap<String, Worker>());
+                    } else if (fields[0].equals("worker")) {
+                        OrderedMultiMap<String, Worker> workers = hostWorkers.get(fields[1]);
+                        if (workers == null) {
+                            throw new IOException("Worker of unknown host " + fields[1]);
+                        }
+                        workers.put(fields[2], new Worker(fields[3], null, fields[4].length() > 0 ? fields[4] : null));
+                    } else if (line.length() > 0 && !line.startsWith("#")) {
+                        throw new IOException("Unknown line");
+                    }
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Too few fields on line " + lineNumber + " of " + file);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad number on line " + lineNumber + " of " + file);
+                }
+            }
+            return new ClusterSnapshot(configName, captureTime, balancerNames, hostWorkers);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String join(List<String> strings) {
+        StringBuilder sb = new StringBuilder();
+        for (String s : strings) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs an external command for each wave. The search strings of the wave are passed as arguments after the
+ * command's own arguments, and comma separated in the environment variable LBUPDATER_WAVE.
+ * A non-zero exit code aborts the rolling operation.
+ */
+public class CommandWaveHook implements WaveHook {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandWaveHook.class);
+
+    private List<String> command;
+
+    /**
+     * @param commandLine The command and its arguments, separated by spaces
+     */
+    public CommandWaveHook(String commandLine) {
+        this.command = Arrays.asList(commandLine.trim().split("\\s+"));
+    }
+
+    @Override
+    public void run(List<String> searchStrings) throws Exception {
+        List<String> commandAndArgs = new ArrayList<String>(command);
+        commandAndArgs.addAll(searchStrings);
+
+        StringBuilder wave = new StringBuilder();
+        for (String searchString : searchStrings) {
+            if (wave.length() > 0) {
+                wave.append(',');
+            }
+            wave.append(searchString);
+        }
+
+        LOGGER.info("Running wave hook {}", commandAndArgs);
+        ProcessBuilder builder = new ProcessBuilder(commandAndArgs);
+        builder.environment().put("LBUPDATER_WAVE", wave.toString());
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        process.getOutputStream().close();
+        logOutput(process.getInputStream());
+
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("Wave hook " + commandAndArgs + " exited with code " + exitCode);
+        }
+    }
+
+    private void logOutput(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                LOGGER.info("hook: {}", line);
+                line.setLength(0);
+            } else {
+                line.append((char) c);
+            }
+        }
+        if (line.length() > 0) {
+            LOGGER.info("hook: {}", line);
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,106 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.exception.BadConfigurationException;
+import se.mt.loadbalancerupdater.util.NamedThreadFactory;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the config file again when it is changed outside the application, e.g. by Puppet.
+ * <p/>
+ * The file's modification time and size are polled, since WatchService needs Java 7. A change is only read
+ * once the file has looked the same for two polls in a row, so that a file that is still being written isn't read.
+ * A file with bad configs is logged and otherwise ignored, the configs in use are kept.
+ */
+public class ConfigFileWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigFileWatcher.class);
+
+    private static final int DEFAULT_INTERVAL = 2000;
+
+    private final File file;
+    private final ConfigReloadListener listener;
+    private final long interval = Settings.getInt(Settings.CONFIG_WATCH_INTERVAL, DEFAULT_INTERVAL);
+    private ScheduledExecutorService scheduler;
+    // The modification time and size of the file as last read, and as seen by the last poll
+    private long loadedModified;
+    private long loadedLength;
+    private long seenModified;
+    private long seenLength;
+
+    public ConfigFileWatcher(String path, ConfigReloadListener listener) {
+        this.file = new File(path);
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching, taking the file as it is now as already read. Does nothing if watching is turned off.
+     */
+    public synchronized void start() {
+        if (interval <= 0 || scheduler != null) {
+            return;
+        }
+        LOGGER.info("Watching {} for changes every {} ms", file, interval);
+        loadedModified = seenModified = file.lastModified();
+        loadedLength = seenLength = file.length();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("config-watcher"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check();
+                } catch (RuntimeException e) {
+                    // Keep watching, the next change may be better
+                    LOGGER.warn("Could not reload " + file, e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void check() {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == loadedModified && length == loadedLength) {
+            return;
+        }
+        if (modified != seenModified || length != seenLength) {
+            // Changed since the last poll, wait for the writer to finish
+            seenModified = modified;
+            seenLength = length;
+            return;
+        }
+        loadedModified = modified;
+        loadedLength = length;
+        if (modified == 0) {
+            LOGGER.warn("Config file {} was removed, keeping the configs in use", file);
+            return;
+        }
+
+        List<BalancerConfig> configs;
+        try {
+            configs = BalancerConfig.readFromFile(file.getPath());
+        } catch (BadConfigurationException e) {
+            LOGGER.warn("Config file {} changed but contains bad data, keeping the configs in use: {}", file, e.getMessage());
+            return;
+        }
+        if (configs == null || configs.isEmpty()) {
+            LOGGER.warn("Config file {} changed but has no configs, keeping the configs in use", file);
+            return;
+        }
+        LOGGER.info("Config file {} changed, read {}", file, BalancerConfig.getConfigNames(configs));
+        listener.configFileChanged(configs);
+    }
+}
@@ -15,10 +15,11 @@ import java.util.List;
 public class ConfigPanel extends JPanel implements ApplicationPanel {
 
     private static final String HOSTS_INFO = "This is a list of host names or IP addresses that the load balancers reside on. Typically two but could be more. " +
-            "The same operations are performed on <b>ALL</b> of these and they are displayed side-by-side in the main view.";
+            "The same operations are performed on <b>ALL</b> of these and their workers are all listed in the main view.";
     private static final String NAME_INFO = "A list of names used when locating \"balancers\": The program searches for strings like \"balancer://<name>\"";
     private static final String SEARCH_INFO = "These strings are used when searching for worker URLs within the balancers. Each search " +
-            "string represents one demon (e.g. one Tomcat instances)";
+            "string represents one demon (e.g. one Tomcat instances). Prefix with glob: to match the whole worker URL " +
+            "with * and ? wildcards, or with regex: for a regular expression";
 
     private JPanel currentMainPanel;
 
@@ -0,0 +1,14 @@
+package se.mt.loadbalancerupdater;
+
+import java.util.List;
+
+/**
+ * Receives the configs read again by the ConfigFileWatcher. Called on the watcher's thread.
+ */
+public interface ConfigReloadListener {
+
+    /**
+     * @param configs   All configs in the file, valid but not compared to the ones in use
+     */
+    void configFileChanged(List<BalancerConfig> configs);
+}
@@ -0,0 +1,19 @@
+package se.mt.loadbalancerupdater;
+
+/**
+ * The ways a worker can be taken out of service. Apache 2.2 only has DISABLED, and uses it for the others too.
+ */
+public enum DisableMode {
+    /**
+     * "Dis": the worker gets no new requests, but is retried automatically
+     */
+    DISABLED,
+    /**
+     * "Drn", Apache 2.4: the worker only gets requests of the sticky sessions it already has
+     */
+    DRAINING,
+    /**
+     * "Stop", Apache 2.4: the worker gets no requests at all and is not retried
+     */
+    STOPPED
+}
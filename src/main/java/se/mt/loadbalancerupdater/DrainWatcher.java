@@ -0,0 +1,185 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Waits for workers that were taken out of service to finish their in-flight requests, by re-reading
+ * their hosts until Busy is 0 for all of them. A deploy can then go ahead as soon as the workers are idle,
+ * instead of after a fixed sleep.
+ * <p/>
+ * Like SubmitVerifier, each round of reads is a short operation on the OperationEngine and the waiting between
+ * rounds happens in the calling thread, so a long drain doesn't hold the host threads that other operations need.
+ * <p/>
+ * Apache 2.2 doesn't show Busy, so hosts without it are given a fixed time to drain instead.
+ */
+public class DrainWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DrainWatcher.class);
+
+    private static final int DEFAULT_TIMEOUT = 60000;
+    private static final int DEFAULT_FALLBACK_WAIT = 5000;
+    private static final int FIRST_POLL_DELAY = 200;
+    private static final int MAX_POLL_DELAY = 2000;
+
+    private OperationEngine operationEngine;
+    private List<String> balancerNames;
+    private Map<String, OrderedMultiMap<String, Worker>> targets;
+    private long timeoutMillis = Settings.getInt(Settings.DRAIN_TIMEOUT, DEFAULT_TIMEOUT);
+    private long fallbackWaitMillis = Settings.getInt(Settings.ROLLING_DRAIN_WAIT, DEFAULT_FALLBACK_WAIT);
+
+    /**
+     * @param targets   Host mapped to the workers to wait for by balancer heading, see HostUpdater.getTargets()
+     */
+    public DrainWatcher(OperationEngine operationEngine, List<String> balancerNames,
+                        Map<String, OrderedMultiMap<String, Worker>> targets) {
+        this.operationEngine = operationEngine;
+        this.balancerNames = balancerNames;
+        this.targets = targets;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param fallbackWaitMillis    How long to wait on hosts that don't show Busy, -Dlbupdater.rolling.drain.wait
+     *                              or 5 s by default
+     */
+    public void setFallbackWaitMillis(long fallbackWaitMillis) {
+        this.fallbackWaitMillis = fallbackWaitMillis;
+    }
+
+    /**
+     * Blocks until the workers of every host are idle, or the timeout has passed. Never call this on the
+     * event dispatch thread.
+     *
+     * @return The number of idle workers per host. Hosts where some of the workers were still busy when the
+     *         timeout passed, or that could not be read, are failed.
+     */
+    public OperationResult await() throws InterruptedException {
+        final OperationResult result = new OperationResult(new ArrayList<String>(targets.keySet()));
+        // Host mapped to its number of idle workers, once it is known that the host doesn't show Busy
+        final Map<String, Integer> unknown = new HashMap<String, Integer>();
+        final Map<String, List<String>> busy = new HashMap<String, List<String>>();
+        List<String> pending = new ArrayList<String>(targets.keySet());
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMillis;
+        long delay = FIRST_POLL_DELAY;
+        while (!pending.isEmpty()) {
+            OperationResult round = operationEngine.execute(pending, new HostTask() {
+                @Override
+                public int run(String host) throws Exception {
+                    return check(host, unknown, busy);
+                }
+            }, null).await();
+
+            List<String> stillPending = new ArrayList<String>();
+            for (String host : pending) {
+                Exception failure = round.getFailures().get(host);
+                Integer idle = round.getUpdatedWorkers().get(host);
+                if (failure != null) {
+                    result.hostFailed(host, failure);
+                } else if (idle != null && idle >= 0) {
+                    result.hostCompleted(host, idle);
+                } else if (!isUnknown(unknown, host)) {
+                    stillPending.add(host);
+                }
+            }
+            pending = stillPending;
+            if (pending.isEmpty()) {
+                break;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                for (String host : pending) {
+                    synchronized (busy) {
+                        result.hostFailed(host, new IOException("Still busy on " + host + " after " + timeoutMillis
+                                + " ms: " + busy.get(host)));
+                    }
+                }
+                break;
+            }
+            Thread.sleep(Math.min(delay, deadline - now));
+            delay = Math.min(delay * 2, MAX_POLL_DELAY);
+        }
+
+        // Hosts without Busy get the fixed wait from the start, counted along with the others' drain
+        Map<String, Integer> waited;
+        synchronized (unknown) {
+            waited = new HashMap<String, Integer>(unknown);
+        }
+        if (!waited.isEmpty()) {
+            long wait = start + fallbackWaitMillis - System.currentTimeMillis();
+            LOGGER.info("{} don't show busy requests, waiting {} ms for their workers to drain", waited.keySet(),
+                    Math.max(0, wait));
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+            for (Map.Entry<String, Integer> entry : waited.entrySet()) {
+                result.hostCompleted(entry.getKey(), entry.getValue());
+            }
+        }
+        result.completed();
+        return result;
+    }
+
+    private static boolean isUnknown(Map<String, Integer> unknown, String host) {
+        synchronized (unknown) {
+            return unknown.containsKey(host);
+        }
+    }
+
+    /**
+     * Reads a host once.
+     *
+     * @return The number of idle workers, or -1 if some are still busy. A host that doesn't show Busy is put
+     *         in unknown instead, and also returns -1 so that it is not reported before its fixed wait.
+     */
+    private int check(String host, Map<String, Integer> unknown, Map<String, List<String>> busy) throws Exception {
+        OrderedMultiMap<String, Worker> current = new PageGetter(host, balancerNames).getCurrentWorkers();
+        int idle = 0;
+        boolean unknownBusy = false;
+        List<String> hostBusy = new ArrayList<String>();
+        for (Map.Entry<String, Collection<Worker>> entry : targets.get(host).getMap().entrySet()) {
+            for (Worker target : entry.getValue()) {
+                Worker worker = SubmitVerifier.find(current, entry.getKey(), target.getName());
+                if (worker == null) {
+                    // Removed from the balancer, so it gets no requests
+                    continue;
+                }
+                if (worker.getBusy() == Worker.UNKNOWN) {
+                    unknownBusy = true;
+                    idle++;
+                } else if (worker.getBusy() > 0) {
+                    hostBusy.add(worker.getName() + " (" + worker.getBusy() + " busy)");
+                } else {
+                    idle++;
+                }
+            }
+        }
+        if (!hostBusy.isEmpty()) {
+            LOGGER.debug("Waiting for {} on {} to drain", hostBusy, host);
+            synchronized (busy) {
+                busy.put(host, hostBusy);
+            }
+            return -1;
+        }
+        if (unknownBusy && fallbackWaitMillis > 0) {
+            synchronized (unknown) {
+                unknown.put(host, idle);
+            }
+            return -1;
+        }
+        return idle;
+    }
+}
@@ -0,0 +1,55 @@
+package se.mt.loadbalancerupdater;
+
+import javax.swing.*;
+
+/**
+ * Forwards all callbacks to another listener on the Swing event dispatch thread.
+ */
+public class EdtOperationListener implements OperationListener {
+
+    private final OperationListener delegate;
+
+    public EdtOperationListener(OperationListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void hostStarted(final String host) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.hostStarted(host);
+            }
+        });
+    }
+
+    @Override
+    public void hostCompleted(final String host, final int workersUpdated) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.hostCompleted(host, workersUpdated);
+            }
+        });
+    }
+
+    @Override
+    public void hostFailed(final String host, final Exception e) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.hostFailed(host, e);
+            }
+        });
+    }
+
+    @Override
+    public void operationCompleted(final OperationResult result) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                delegate.operationCompleted(result);
+            }
+        });
+    }
+}
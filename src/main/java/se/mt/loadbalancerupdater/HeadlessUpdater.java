@@ -0,0 +1,402 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.exception.BadConfigurationException;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line mode for scripts, e.g. rolling deploys:
+ * <pre>
+ * java -jar load-balancer-updater.jar --config my_system --disable tomcat3
+ * </pre>
+ * It never touches AWT or Swing, and only fetches the pages it needs, so it starts and exits quickly.
+ * Results are written to stdout as tab separated lines, logging goes to stderr, and the exit code tells what happened.
+ */
+public class HeadlessUpdater {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_USAGE = 1;
+    public static final int EXIT_BAD_CONFIG = 2;
+    public static final int EXIT_NO_MATCHING_WORKERS = 3;
+    public static final int EXIT_PARTIAL_FAILURE = 4;
+    public static final int EXIT_FAILURE = 5;
+
+    private static final String USAGE =
+            "Usage: java -jar load-balancer-updater.jar [--file <config_file_path>] [--config <config_name>]\n" +
+            "           (--enable <search_string> | --status |\n" +
+            "            --disable <search_string> [--mode disable|drain|stop] [--wait-idle] |\n" +
+            "            --rolling [--wave-size <n>] [--min-in-service <fraction>] [--hook <command>] |\n" +
+            "            --snapshot <snapshot_file> | --restore <snapshot_file>)\n" +
+            "\n" +
+            "--rolling disables, drains and re-enables all search strings of the config, a wave of n at a time\n" +
+            "(default 1), running the hook command with the wave's search strings as arguments in between.\n" +
+            "--mode drain and stop only exist in Apache 2.4, 2.2 disables. --wait-idle waits until the workers\n" +
+            "have no busy requests and prints a line per host with the number of idle workers.\n" +
+            "--snapshot saves the state of every worker of the config, --restore puts the hosts of a snapshot\n" +
+            "back to that state, only submitting the workers that differ.\n" +
+            "\n" +
+            "Exit codes: 0 ok, 1 usage, 2 bad configuration, 3 no matching workers,\n" +
+            "            4 failed on some hosts, 5 failed on all hosts";
+
+    private String file = BalancerConfig.getDefaultConfigPath();
+    private String configName;
+    private String searchString;
+    private Boolean enable;
+    private boolean status;
+    private boolean rolling;
+    private int waveSize = 1;
+    private double minInService = 0.5;
+    private String hookCommand;
+    private String snapshotFile;
+    private String restoreFile;
+    private DisableMode disableMode;
+    private boolean waitIdle;
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    HeadlessUpdater(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * @return True if the arguments ask for headless mode rather than the GUI
+     */
+    public static boolean isHeadless(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int exitCode = new HeadlessUpdater(System.out, System.err).run(args);
+        System.exit(exitCode);
+    }
+
+    int run(String[] args) {
+        if (!parseArguments(args)) {
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (restoreFile != null) {
+            // The snapshot knows its hosts and balancers, so the config file isn't needed
+            return restore();
+        }
+
+        BalancerConfig config;
+        try {
+            config = findConfig();
+        } catch (BadConfigurationException e) {
+            err.println(e.getMessage());
+            return EXIT_BAD_CONFIG;
+        }
+
+        if (status) {
+            return printStatus(config);
+        }
+        if (rolling) {
+            return rollingUpdate(config);
+        }
+        if (snapshotFile != null) {
+            return saveSnapshot(config);
+        }
+        return update(config);
+    }
+
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--status")) {
+                status = true;
+                continue;
+            }
+            if (arg.equals("--rolling")) {
+                rolling = true;
+                continue;
+            }
+            if (arg.equals("--wait-idle")) {
+                waitIdle = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                return false;
+            }
+            String value = args[++i];
+            if (arg.equals("--file")) {
+                file = value;
+            } else if (arg.equals("--config")) {
+                configName = value;
+            } else if (arg.equals("--enable") || arg.equals("--disable")) {
+                if (enable != null) {
+                    return false;
+                }
+                enable = arg.equals("--enable");
+                searchString = value;
+            } else if (arg.equals("--wave-size")) {
+                try {
+                    waveSize = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            } else if (arg.equals("--min-in-service")) {
+                try {
+                    minInService = Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            } else if (arg.equals("--hook")) {
+                hookCommand = value;
+            } else if (arg.equals("--snapshot")) {
+                snapshotFile = value;
+            } else if (arg.equals("--restore")) {
+                restoreFile = value;
+            } else if (arg.equals("--mode")) {
+                disableMode = parseDisableMode(value);
+                if (disableMode == null) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        int operations = (status ? 1 : 0) + (rolling ? 1 : 0) + (enable != null ? 1 : 0)
+                + (snapshotFile != null ? 1 : 0) + (restoreFile != null ? 1 : 0);
+        if ((disableMode != null || waitIdle) && !Boolean.FALSE.equals(enable)) {
+            // Only for --disable
+            return false;
+        }
+        return operations == 1 && waveSize > 0 && minInService >= 0 && minInService < 1;
+    }
+
+    private static DisableMode parseDisableMode(String value) {
+        if (value.equals("disable")) {
+            return DisableMode.DISABLED;
+        } else if (value.equals("drain")) {
+            return DisableMode.DRAINING;
+        } else if (value.equals("stop")) {
+            return DisableMode.STOPPED;
+        }
+        return null;
+    }
+
+    private BalancerConfig findConfig() throws BadConfigurationException {
+        List<BalancerConfig> configs = BalancerConfig.readFromFile(file);
+        if (configs == null) {
+            throw new BadConfigurationException("Config file " + file + " not found");
+        }
+        if (configName == null) {
+            if (configs.size() != 1) {
+                throw new BadConfigurationException("Config file " + file + " has several configs, pick one with --config: "
+                        + BalancerConfig.getConfigNames(configs));
+            }
+            return configs.get(0);
+        }
+        BalancerConfig config = BalancerConfig.getConfigByName(configs, configName);
+        if (config == null) {
+            throw new BadConfigurationException("No config named " + configName + " in " + file);
+        }
+        return config;
+    }
+
+    /**
+     * Prints one line per worker: host, balancer, worker and status.
+     */
+    private int printStatus(BalancerConfig config) {
+        List<String> hosts = config.getBalancerHosts();
+        final List<OrderedMultiMap<String, Worker>> results = new ArrayList<OrderedMultiMap<String, Worker>>();
+        for (int i = 0; i < hosts.size(); i++) {
+            results.add(null);
+        }
+        final List<String> hostList = new ArrayList<String>(hosts);
+        final List<String> balancerNames = config.getBalancerNames();
+
+        OperationEngine engine = new OperationEngine(hosts.size(), 1);
+        OperationResult result = awaitResult(engine.execute(hostList, new HostTask() {
+            @Override
+            public int run(String host) throws Exception {
+                OrderedMultiMap<String, Worker> workers = new PageGetter(host, balancerNames).getWorkers();
+                synchronized (results) {
+                    results.set(hostList.indexOf(host), workers);
+                }
+                return 0;
+            }
+        }, null));
+        engine.shutdown();
+
+        for (int i = 0; i < hostList.size(); i++) {
+            OrderedMultiMap<String, Worker> workers = results.get(i);
+            if (workers == null) {
+                continue;
+            }
+            for (Map.Entry<String, Collection<Worker>> entry : workers.getMap().entrySet()) {
+                String balancer = StatusPageParser.getBalancerName(entry.getKey());
+                for (Worker worker : entry.getValue()) {
+                    out.println(hostList.get(i) + "\t" + balancer + "\t" + worker.getName() + "\t" + worker.getStatus());
+                }
+            }
+        }
+        printFailures(result);
+        return getExitCode(result, true);
+    }
+
+    /**
+     * Prints one line per host: host, number of updated workers and OK or FAILED.
+     * With --wait-idle, then one line per host: host, number of idle workers and IDLE or FAILED.
+     */
+    private int update(BalancerConfig config) {
+        List<String> hosts = config.getBalancerHosts();
+        OperationEngine engine = new OperationEngine(hosts.size(), Settings.getInt(Settings.WORKER_CONCURRENCY, 4));
+        HostUpdater hostUpdater = new HostUpdater(engine, config.getBalancerNames(),
+                config.getWorkerMatcher().select(Collections.singletonList(searchString)), enable);
+        if (disableMode != null) {
+            hostUpdater.setDisableMode(disableMode);
+        }
+        OperationResult result = awaitResult(engine.execute(hosts, hostUpdater, null));
+
+        for (Map.Entry<String, Integer> entry : result.getUpdatedWorkers().entrySet()) {
+            out.println(entry.getKey() + "\t" + entry.getValue() + "\tOK");
+        }
+        printFailures(result);
+        int exitCode = getExitCode(result, result.getTotalUpdatedWorkers() > 0);
+        if (waitIdle && exitCode == EXIT_OK) {
+            Map<String, OrderedMultiMap<String, Worker>> targets = hostUpdater.getTargets();
+            OperationResult drained = awaitDrained(new DrainWatcher(engine, config.getBalancerNames(), targets));
+            for (Map.Entry<String, Integer> entry : drained.getUpdatedWorkers().entrySet()) {
+                out.println(entry.getKey() + "\t" + entry.getValue() + "\tIDLE");
+            }
+            printFailures(drained);
+            exitCode = getExitCode(drained, true);
+        }
+        engine.shutdown();
+        return exitCode;
+    }
+
+    /**
+     * Prints one line per wave: "wave", the wave number and its search strings, then a final OK or FAILED line.
+     */
+    private int rollingUpdate(BalancerConfig config) {
+        OperationEngine engine = new OperationEngine(config.getBalancerHosts().size(),
+                Settings.getInt(Settings.WORKER_CONCURRENCY, 4));
+        WaveHook hook = hookCommand != null ? new CommandWaveHook(hookCommand) : null;
+        RollingOperation operation = new RollingOperation(engine, config, waveSize, minInService, hook, new RollingListener() {
+            @Override
+            public void waveStarted(int waveNumber, int waveCount, List<String> searchStrings) {
+                out.println("wave\t" + waveNumber + "/" + waveCount + "\t" + searchStrings);
+            }
+
+            @Override
+            public void phaseStarted(int waveNumber, RollingOperation.Phase phase) {
+            }
+
+            @Override
+            public void finished(int wavesCompleted, Exception failure) {
+            }
+        });
+        try {
+            operation.run();
+            out.println("rolling\tOK");
+            return EXIT_OK;
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return EXIT_USAGE;
+        } catch (Exception e) {
+            out.println("rolling\tFAILED\t" + e.getMessage());
+            return EXIT_FAILURE;
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Prints one line: "snapshot", the number of saved workers and the file.
+     */
+    private int saveSnapshot(BalancerConfig config) {
+        OperationEngine engine = new OperationEngine(config.getBalancerHosts().size(), 1);
+        try {
+            ClusterSnapshot snapshot = ClusterSnapshot.capture(engine, config);
+            snapshot.save(new File(snapshotFile));
+            out.println("snapshot\t" + snapshot.getWorkerCount() + "\t" + snapshotFile);
+            return snapshot.getWorkerCount() > 0 ? EXIT_OK : EXIT_NO_MATCHING_WORKERS;
+        } catch (IOException e) {
+            out.println("snapshot\tFAILED\t" + e.getMessage());
+            return EXIT_FAILURE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Prints one line per host: host, number of updated workers and OK or FAILED.
+     */
+    private int restore() {
+        ClusterSnapshot snapshot;
+        try {
+            snapshot = ClusterSnapshot.load(new File(restoreFile));
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return EXIT_BAD_CONFIG;
+        }
+        List<String> hosts = snapshot.getHosts();
+        OperationEngine engine = new OperationEngine(hosts.size(), Settings.getInt(Settings.WORKER_CONCURRENCY, 4));
+        OperationResult result = awaitResult(engine.execute(hosts, new SnapshotRestorer(engine, snapshot), null));
+        engine.shutdown();
+
+        for (Map.Entry<String, Integer> entry : result.getUpdatedWorkers().entrySet()) {
+            out.println(entry.getKey() + "\t" + entry.getValue() + "\tOK");
+        }
+        printFailures(result);
+        // Nothing to change is a successful restore
+        return getExitCode(result, true);
+    }
+
+    private void printFailures(OperationResult result) {
+        for (Map.Entry<String, Exception> entry : result.getFailures().entrySet()) {
+            out.println(entry.getKey() + "\t0\tFAILED\t" + entry.getValue().getMessage());
+        }
+    }
+
+    private int getExitCode(OperationResult result, boolean foundWorkers) {
+        if (result.getFailures().size() == result.getHosts().size() && !result.getHosts().isEmpty()) {
+            return EXIT_FAILURE;
+        }
+        if (!result.isSuccessful()) {
+            return EXIT_PARTIAL_FAILURE;
+        }
+        return foundWorkers ? EXIT_OK : EXIT_NO_MATCHING_WORKERS;
+    }
+
+    private OperationResult awaitResult(OperationResult result) {
+        try {
+            return result.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private OperationResult awaitDrained(DrainWatcher drainWatcher) {
+        try {
+            return drainWatcher.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package se.mt.loadbalancerupdater;
+
+/**
+ * A piece of work that is performed against one balancer host by the OperationEngine.
+ */
+public interface HostTask {
+
+    /**
+     * @param host The balancer host to work on
+     * @return The number of workers that were updated on the host
+     */
+    int run(String host) throws Exception;
+}
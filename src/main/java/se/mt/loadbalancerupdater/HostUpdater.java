@@ -0,0 +1,91 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Enables or disables all workers matching any of a number of search strings on one balancer host.
+ * Workers are disabled in DisableMode.DISABLED unless another mode is set.
+ */
+public class HostUpdater implements HostTask {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostUpdater.class);
+
+    private OperationEngine operationEngine;
+    private List<String> balancerNames;
+    private WorkerMatcher matcher;
+    private boolean enable;
+    private DisableMode disableMode = DisableMode.DISABLED;
+    // Host mapped to the workers that were submitted to it, by balancer
+    private final ConcurrentMap<String, OrderedMultiMap<String, Worker>> targets =
+            new ConcurrentHashMap<String, OrderedMultiMap<String, Worker>>();
+
+    public HostUpdater(OperationEngine operationEngine, List<String> balancerNames, WorkerMatcher matcher,
+                       boolean enable) {
+        this.operationEngine = operationEngine;
+        this.balancerNames = balancerNames;
+        this.matcher = matcher;
+        this.enable = enable;
+    }
+
+    public void setDisableMode(DisableMode disableMode) {
+        this.disableMode = disableMode;
+    }
+
+    @Override
+    public int run(String host) throws Exception {
+        LOGGER.debug("{} workers matching {} on host {}", new Object[]{enable ? "Enabling" : "Disabling", matcher.getSelectors(), host});
+
+        final PageGetter getter = new PageGetter(host, balancerNames);
+
+        OrderedMultiMap<String, Worker> workerMap = getter.getWorkers();
+
+        WorkerPipeline pipeline = operationEngine.newWorkerPipeline();
+        OrderedMultiMap<String, Worker> hostTargets = new OrderedMultiMap<String, Worker>();
+        targets.put(host, hostTargets);
+        Map<String, Collection<Worker>> map = workerMap.getMap();
+        for (String balancer : map.keySet()) {
+            Collection<Worker> workers = map.get(balancer);
+            for (final Worker worker : workers) {
+                if (matcher.matches(worker)) {
+                    synchronized (hostTargets) {
+                        hostTargets.put(balancer, worker);
+                    }
+                    pipeline.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            if (enable) {
+                                getter.setEnabled(worker, true);
+                            } else {
+                                getter.setDisabled(worker, disableMode);
+                            }
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+        return pipeline.awaitAll();
+    }
+
+    /**
+     * @return Host mapped to the workers submitted to it, by balancer heading, as they were before the update.
+     *         Only hosts whose status could be read are included.
+     */
+    public Map<String, OrderedMultiMap<String, Worker>> getTargets() {
+        return new HashMap<String, OrderedMultiMap<String, Worker>>(targets);
+    }
+
+    public boolean isEnable() {
+        return enable;
+    }
+}
@@ -3,8 +3,8 @@ package se.mt.loadbalancerupdater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.mt.loadbalancerupdater.exception.BadConfigurationException;
-import sun.tools.jstat.ParserException;
 
+import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
@@ -19,25 +19,48 @@ public class LoadBalancerUpdater {
     private BalancerPanel balancerPanel;
     private MainWindow mainWindow;
     private List<BalancerConfig> configs;
+    private OperationEngine operationEngine = new OperationEngine();
+    private StatusPoller statusPoller = new StatusPoller();
+    private ConfigFileWatcher configFileWatcher;
+    // True while the config panel is shown, its edits win over changes to the file
+    private boolean configuring;
 
     private ActionListener configButtonListener = new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent actionEvent) {
             configPanel = new ConfigPanel(configs, configDoneActionListener);
             mainWindow.setContent(configPanel);
+            configuring = true;
         }
     };
 
     private ActionListener configDoneActionListener = new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent actionEvent) {
-            balancerPanel = new BalancerPanel(configs, configButtonListener);
+            balancerPanel.close();
+            balancerPanel = new BalancerPanel(configs, configButtonListener, operationEngine, statusPoller);
             mainWindow.setContent(balancerPanel);
+            configuring = false;
         }
     };
 
+    private ConfigReloadListener configReloadListener = new ConfigReloadListener() {
+        @Override
+        public void configFileChanged(final List<BalancerConfig> newConfigs) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    reloadConfigs(newConfigs);
+                }
+            });
+        }
+    };
 
-    public LoadBalancerUpdater(List<BalancerConfig> configs) {
+
+    /**
+     * @param configPath    The config file, watched for changes
+     */
+    public LoadBalancerUpdater(List<BalancerConfig> configs, String configPath) {
 
         if (configs == null) {
             configs = new ArrayList<BalancerConfig>();
@@ -45,10 +68,31 @@ public class LoadBalancerUpdater {
         }
 
         this.configs = configs;
-        balancerPanel = new BalancerPanel(configs, configButtonListener);
+        balancerPanel = new BalancerPanel(configs, configButtonListener, operationEngine, statusPoller);
         mainWindow = new MainWindow();
         configPanel = new ConfigPanel(configs, configDoneActionListener);
+        configFileWatcher = new ConfigFileWatcher(configPath, configReloadListener);
+
+    }
 
+    /**
+     * Takes in configs read again from the file. Only the configs whose settings changed are replaced,
+     * the rest keep their panels, and the status caches and connections of all hosts are kept.
+     */
+    private void reloadConfigs(List<BalancerConfig> newConfigs) {
+        if (configuring) {
+            LOGGER.warn("Config file changed while configuring, keeping the configs being edited");
+            return;
+        }
+        List<BalancerConfig> merged = BalancerConfig.merge(configs, newConfigs);
+        if (merged.equals(configs)) {
+            LOGGER.debug("Config file changed, but none of the configs did");
+            return;
+        }
+        // The panels share the list, so change it in place
+        configs.clear();
+        configs.addAll(merged);
+        balancerPanel.updateConfigs(configs);
     }
 
     private void doIt(boolean showConfig) {
@@ -58,12 +102,20 @@ public class LoadBalancerUpdater {
             mainWindow.setContent(balancerPanel);
         }
         mainWindow.setVisible(true);
+        configuring = showConfig;
+        configFileWatcher.start();
     }
 
-    public static void main(String[] args) throws IOException, ParserException {
+    public static void main(String[] args) throws IOException {
+
+        if (HeadlessUpdater.isHeadless(args)) {
+            HeadlessUpdater.main(args);
+            return;
+        }
 
         if (args.length > 1) {
             System.err.println("Usage: java -jar load-balancer-updater.jar <optional config_file_path>");
+            System.err.println("   or: java -jar load-balancer-updater.jar --help for command line mode");
             return;
         }
 
@@ -95,7 +147,7 @@ public class LoadBalancerUpdater {
 
         LOGGER.info("Loaded configs: \n\n{}", configs);
 
-        LoadBalancerUpdater updater = new LoadBalancerUpdater(configs);
+        LoadBalancerUpdater updater = new LoadBalancerUpdater(configs, filename);
         updater.doIt(configs == null);
 
     }
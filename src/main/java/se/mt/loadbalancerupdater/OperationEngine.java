@@ -0,0 +1,119 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.util.NamedThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a HostTask on all balancer hosts in parallel, on a bounded pool of background threads.
+ * The total time of an operation is that of the slowest host rather than the sum of all hosts.
+ */
+public class OperationEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OperationEngine.class);
+
+    private static final int DEFAULT_HOST_THREADS = 8;
+    private static final int DEFAULT_WORKER_CONCURRENCY = 4;
+
+    private final ExecutorService hostExecutor;
+    private final ExecutorService workerExecutor;
+    private final int workerConcurrency;
+
+    public OperationEngine() {
+        this(Settings.getInt(Settings.HOST_THREADS, DEFAULT_HOST_THREADS),
+                Settings.getInt(Settings.WORKER_CONCURRENCY, DEFAULT_WORKER_CONCURRENCY));
+    }
+
+    public OperationEngine(int hostThreads, int workerConcurrency) {
+        LOGGER.info("Creating OperationEngine with {} host threads and {} workers per host", hostThreads, workerConcurrency);
+        hostThreads = Math.max(1, hostThreads);
+        this.workerConcurrency = Math.max(1, workerConcurrency);
+        hostExecutor = Executors.newFixedThreadPool(hostThreads, new NamedThreadFactory("balancer-host"));
+        // Host threads only wait for their workers, so the worker pool never starves them
+        workerExecutor = Executors.newFixedThreadPool(hostThreads * this.workerConcurrency,
+                new NamedThreadFactory("balancer-worker"));
+    }
+
+    /**
+     * Creates a pipeline for the per-worker jobs of one host, limited to the configured per-host concurrency.
+     */
+    public WorkerPipeline newWorkerPipeline() {
+        return new WorkerPipeline(workerExecutor, workerConcurrency);
+    }
+
+    /**
+     * Starts the task on every host and returns immediately.
+     *
+     * @param hosts     The balancer hosts to run the task on
+     * @param task      The work to do on each host
+     * @param listener  Receives progress for every host, may be null
+     * @return          The result, which is complete when listener.operationCompleted has been called
+     */
+    public OperationResult execute(List<String> hosts, final HostTask task, OperationListener listener) {
+        final List<String> hostList = new ArrayList<String>(hosts);
+        final OperationListener safeListener = listener != null ? listener : new NoOpListener();
+        final OperationResult result = new OperationResult(hostList);
+        final AtomicInteger remaining = new AtomicInteger(hostList.size());
+
+        if (hostList.isEmpty()) {
+            result.completed();
+            safeListener.operationCompleted(result);
+            return result;
+        }
+
+        for (final String host : hostList) {
+            hostExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        safeListener.hostStarted(host);
+                        int updated = task.run(host);
+                        LOGGER.info("Host {} done, {} workers updated", host, updated);
+                        result.hostCompleted(host, updated);
+                        safeListener.hostCompleted(host, updated);
+                    } catch (Exception e) {
+                        LOGGER.warn("Operation failed on host " + host, e);
+                        result.hostFailed(host, e);
+                        safeListener.hostFailed(host, e);
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            result.completed();
+                            LOGGER.info("Operation completed: {}", result);
+                            safeListener.operationCompleted(result);
+                        }
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    public void shutdown() {
+        hostExecutor.shutdown();
+        workerExecutor.shutdown();
+    }
+
+    private static class NoOpListener implements OperationListener {
+        @Override
+        public void hostStarted(String host) {
+        }
+
+        @Override
+        public void hostCompleted(String host, int workersUpdated) {
+        }
+
+        @Override
+        public void hostFailed(String host, Exception e) {
+        }
+
+        @Override
+        public void operationCompleted(OperationResult result) {
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package se.mt.loadbalancerupdater;
+
+/**
+ * Progress callbacks from the OperationEngine. They are called from the engine's threads,
+ * wrap the listener in an EdtOperationListener when touching Swing components.
+ */
+public interface OperationListener {
+
+    void hostStarted(String host);
+
+    void hostCompleted(String host, int workersUpdated);
+
+    void hostFailed(String host, Exception e);
+
+    /**
+     * Called once, after all hosts have either completed or failed.
+     */
+    void operationCompleted(OperationResult result);
+}
@@ -0,0 +1,91 @@
+package se.mt.loadbalancerupdater;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The outcome of running a HostTask on a number of hosts. Filled in concurrently by the
+ * OperationEngine, so read it only after the operation has completed.
+ */
+public class OperationResult {
+
+    private final List<String> hosts;
+    private final Map<String, Integer> updatedWorkers = new LinkedHashMap<String, Integer>();
+    private final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+    private final long startTime = System.currentTimeMillis();
+    private long endTime;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    OperationResult(List<String> hosts) {
+        this.hosts = hosts;
+    }
+
+    synchronized void hostCompleted(String host, int workersUpdated) {
+        updatedWorkers.put(host, workersUpdated);
+    }
+
+    synchronized void hostFailed(String host, Exception e) {
+        failures.put(host, e);
+    }
+
+    void completed() {
+        synchronized (this) {
+            endTime = System.currentTimeMillis();
+        }
+        done.countDown();
+    }
+
+    /**
+     * Blocks until all hosts have either completed or failed. Never call this on the event dispatch thread.
+     */
+    public OperationResult await() throws InterruptedException {
+        done.await();
+        return this;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public synchronized Map<String, Integer> getUpdatedWorkers() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Integer>(updatedWorkers));
+    }
+
+    public synchronized Map<String, Exception> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Exception>(failures));
+    }
+
+    public synchronized int getTotalUpdatedWorkers() {
+        int total = 0;
+        for (Integer count : updatedWorkers.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    public synchronized boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    public synchronized long getElapsedMillis() {
+        return endTime - startTime;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("OperationResult");
+        sb.append("{updatedWorkers=").append(updatedWorkers);
+        sb.append(", failures=").append(failures.keySet());
+        sb.append(", elapsedMillis=").append(endTime - startTime);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -3,17 +3,24 @@ package se.mt.loadbalancerupdater;
 import org.htmlparser.Node;
 import org.htmlparser.NodeFilter;
 import org.htmlparser.tags.InputTag;
-import org.htmlparser.tags.LinkTag;
-import org.htmlparser.tags.TableTag;
 import org.htmlparser.util.NodeList;
 import org.htmlparser.util.ParserException;
 import org.htmlparser.util.SimpleNodeIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.http.HttpResponse;
+import se.mt.loadbalancerupdater.http.HttpTransport;
+import se.mt.loadbalancerupdater.journal.ChangeJournal;
+import se.mt.loadbalancerupdater.journal.JournalRecord;
+import se.mt.loadbalancerupdater.metrics.Metrics;
+import se.mt.loadbalancerupdater.metrics.Phase;
+import se.mt.loadbalancerupdater.metrics.PhaseTimer;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
 import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+import se.mt.loadbalancerupdater.util.QueryStrings;
 
 import java.io.IOException;
-import java.net.URL;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,124 +28,227 @@ import java.util.Map;
 public class PageGetter {
     private String balanceManagerHost;
     private List<String> balancerNames;
+    private HttpTransport transport;
+    private StatusCache statusCache;
+    // Balancer name mapped to its nonce, read from the HTML status page when the worker links lack it
+    private Map<String, String> nonces;
+    private UpdateProtocol updateProtocol;
+    private final Metrics metrics = Metrics.getDefault();
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PageGetter.class);
 
+    // The fields of the edit form that identify the worker. All other fields are optional when submitting.
+    private static final String[] LINK_FIELDS = {"b", "w", "nonce"};
+
     public PageGetter(String balanceManagerHost, List<String> balancerNames) {
+        this(balanceManagerHost, balancerNames, HttpTransport.getDefault(), StatusCache.getDefault());
+    }
+
+    public PageGetter(String balanceManagerHost, List<String> balancerNames, HttpTransport transport,
+                      StatusCache statusCache) {
         LOGGER.info("Creating PageGetter: balanceManagerHost = {}, balancerNames = {}", balanceManagerHost, balancerNames);
         this.balanceManagerHost = balanceManagerHost;
         this.balancerNames = balancerNames;
+        this.transport = transport;
+        this.statusCache = statusCache;
     }
 
     public OrderedMultiMap<String, Worker> getWorkers() throws IOException, ParserException {
+        return getWorkers(false);
+    }
 
-        OrderedMultiMap<String, Worker> balancerToWorkerMap = new OrderedMultiMap<String, Worker>();
-
-        String urlString = BalancerConfig.getBalancerManagerUrl(balanceManagerHost);
-        NodeList balancers = getConfiguredBalancers(urlString, balancerNames);
+    /**
+     * @param forceFetch    Fetch the status page even if the cached one is still fresh
+     */
+    public OrderedMultiMap<String, Worker> getWorkers(boolean forceFetch) throws IOException, ParserException {
+        return getSnapshot(forceFetch).getWorkers(balancerNames);
+    }
 
-        SimpleNodeIterator elements = balancers.elements();
-        while (elements.hasMoreNodes()) {
-            Node node = elements.nextNode();
-            String balancerText = node.getFirstChild().getText();
+    /**
+     * Fetches the status page and parses it, with traffic counters such as Busy that are up to date.
+     * getWorkers() may return workers parsed from an earlier page that only differed in counters.
+     */
+    public OrderedMultiMap<String, Worker> getCurrentWorkers() throws IOException {
+        return getSnapshot(true).getCurrentWorkers(balancerNames);
+    }
 
-            int numTablesSeen = 0;
-            while (true) {
-                if (node instanceof TableTag) {
-                    if (++numTablesSeen == 2) {
-                        break;
-                    }
-                }
-                node = node.getNextSibling();
+    /**
+     * @param forceFetch    Fetch the status page even if the cached one is still fresh
+     */
+    public StatusSnapshot getSnapshot(boolean forceFetch) throws IOException {
+        StatusSnapshot snapshot = forceFetch ? statusCache.refresh(balanceManagerHost) : statusCache.get(balanceManagerHost);
+        synchronized (this) {
+            if (updateProtocol == null) {
+                updateProtocol = snapshot.getUpdateProtocol();
             }
+        }
+        return snapshot;
+    }
 
-            NodeList linksInTable = node.getChildren().extractAllNodesThatMatch(new NodeFilter() {
-                @Override
-                public boolean accept(Node node) {
-                    return node instanceof LinkTag;
-                }
-            }, true);
+    /**
+     * Gets the fields needed to submit a change for a worker. They are taken from the worker's link
+     * on the status page when possible, which saves fetching and parsing the worker's edit page.
+     */
+    public Map<String, String> getSubmitFields(Worker worker) throws IOException, ParserException {
+        Map<String, String> fields = getSubmitFieldsFromLink(worker);
+        if (fields != null) {
+            return fields;
+        }
+        fields = getSubmitFieldsWithNonceFromPage(worker);
+        if (fields != null) {
+            return fields;
+        }
+        LOGGER.debug("Could not derive submit fields from link {}, fetching the form", worker.getUrl());
+        return getSubmitFieldsForWorker(worker);
+    }
 
+    /**
+     * Builds the submit fields from the worker link, which looks like
+     * /balancer-manager?b=mycluster&w=http://tomcat1:8080&nonce=0a1b2c3d-...
+     *
+     * @return The fields, or null if the link does not contain them all
+     */
+    Map<String, String> getSubmitFieldsFromLink(Worker worker) {
+        Map<String, String> params = QueryStrings.parse(worker.getUrl());
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        for (String name : LINK_FIELDS) {
+            String value = params.get(name);
+            if (value == null || value.length() == 0) {
+                return null;
+            }
+            fields.put(name, value);
+        }
+        return fields;
+    }
 
-            SimpleNodeIterator linkIter = linksInTable.elements();
+    /**
+     * Workers read from the XML status may lack the nonce, then it is taken from the HTML page.
+     * The page is only fetched once per PageGetter, since the nonce is the same for all workers of a balancer.
+     */
+    private Map<String, String> getSubmitFieldsWithNonceFromPage(Worker worker) throws IOException {
+        Map<String, String> params = QueryStrings.parse(worker.getUrl());
+        String balancer = params.get("b");
+        if (balancer == null || params.get("w") == null) {
+            return null;
+        }
+        String nonce = getNonces().get(balancer);
+        if (nonce == null) {
+            return null;
+        }
+        Map<String, String> fields = new LinkedHashMap<String, String>();
+        fields.put("b", balancer);
+        fields.put("w", params.get("w"));
+        fields.put("nonce", nonce);
+        return fields;
+    }
 
-            while (linkIter.hasMoreNodes()) {
-                LinkTag linkNode = (LinkTag) linkIter.nextNode();
-                balancerToWorkerMap.put(balancerText, new Worker(linkNode.getLinkText(), linkNode.getLink()));
+    private synchronized Map<String, String> getNonces() throws IOException {
+        if (nonces == null) {
+            nonces = new HashMap<String, String>();
+            HttpResponse response = transport.get(BalancerConfig.getBalancerManagerUrl(balanceManagerHost));
+            OrderedMultiMap<String, Worker> workers =
+                    StatusPageParser.forBalancers(balancerNames).parse(response.getBodyReader(), response.getUrl());
+            for (Worker pageWorker : workers.allValues()) {
+                Map<String, String> params = QueryStrings.parse(pageWorker.getUrl());
+                if (params.get("b") != null && params.get("nonce") != null) {
+                    nonces.put(params.get("b"), params.get("nonce"));
+                }
             }
         }
-
-        return balancerToWorkerMap;
+        return nonces;
     }
 
     public Map<String, String> getSubmitFieldsForWorker(Worker worker) throws IOException, ParserException {
-        URL url = new URL(worker.getUrl());
-        org.htmlparser.Parser parser = new org.htmlparser.Parser(url.openConnection());
+        PhaseTimer timer = metrics.start(Phase.FORM_FETCH, balanceManagerHost, QueryStrings.parse(worker.getUrl()).get("b"));
+        try {
+            HttpResponse response = transport.get(worker.getUrl());
+            org.htmlparser.Parser parser = org.htmlparser.Parser.createParser(response.getBodyAsString(), response.getCharset());
 
-        NodeList inputTags = parser.extractAllNodesThatMatch(new NodeFilter() {
-            @Override
-            public boolean accept(Node node) {
-                return node instanceof InputTag;
-            }
-        });
+            NodeList inputTags = parser.extractAllNodesThatMatch(new NodeFilter() {
+                @Override
+                public boolean accept(Node node) {
+                    return node instanceof InputTag;
+                }
+            });
 
-        Map<String, String> fields = new LinkedHashMap<String, String>();
+            Map<String, String> fields = new LinkedHashMap<String, String>();
 
-        SimpleNodeIterator elements = inputTags.elements();
-        while (elements.hasMoreNodes()) {
-            InputTag node = (InputTag) elements.nextNode();
-            if (!node.getAttribute("type").equalsIgnoreCase("submit")) {
-                fields.put(node.getAttribute("name"), node.getAttribute("value"));
+            SimpleNodeIterator elements = inputTags.elements();
+            while (elements.hasMoreNodes()) {
+                InputTag node = (InputTag) elements.nextNode();
+                if (!node.getAttribute("type").equalsIgnoreCase("submit")) {
+                    fields.put(node.getAttribute("name"), node.getAttribute("value"));
+                }
             }
+            timer.success();
+            return fields;
+        } finally {
+            timer.stop();
         }
-        return fields;
     }
 
+    /**
+     * Enables or disables a worker, with the protocol of the Apache version serving this host.
+     */
+    public void setEnabled(Worker worker, boolean enable) throws IOException, ParserException {
+        Map<String, String> fields = getSubmitFields(worker);
+        getUpdateProtocol().setEnabled(fields, enable);
+        submit(fields);
+    }
+
+    /**
+     * Takes a worker out of service in the given way, or disables it if the Apache version doesn't have that mode.
+     */
+    public void setDisabled(Worker worker, DisableMode mode) throws IOException, ParserException {
+        Map<String, String> fields = getSubmitFields(worker);
+        getUpdateProtocol().setDisabled(fields, mode);
+        submit(fields);
+    }
 
     public void submit(Map<String, String> fields) throws IOException {
-        StringBuilder urlString = new StringBuilder();
-        urlString.append(BalancerConfig.getBalancerManagerUrl(balanceManagerHost)).append('?');
-        for (Map.Entry<String, String> entry : fields.entrySet()) {
-            urlString.append(entry.getKey()).append("=").append(entry.getValue()).append("&");
+        PhaseTimer timer = metrics.start(Phase.SUBMIT, balanceManagerHost, fields.get("b"));
+        String result = "FAILED";
+        try {
+            getUpdateProtocol().submit(transport, BalancerConfig.getBalancerManagerUrl(balanceManagerHost), fields);
+            timer.success();
+            result = "OK";
+        } catch (IOException e) {
+            result = "FAILED: " + e.getMessage();
+            throw e;
+        } finally {
+            timer.stop();
+            statusCache.invalidate(balanceManagerHost);
+            // Looked up here rather than when created, so that getters that never submit don't open the journal
+            ChangeJournal journal = ChangeJournal.getDefault();
+            if (journal != null) {
+                journal.record(new JournalRecord(balanceManagerHost, fields.get("b"), fields.get("w"), getAction(fields), result));
+            }
         }
-        // Remove the last &
-        urlString.delete(urlString.length() - 1, urlString.length());
-
-        LOGGER.info("About to submit: {}", urlString);
-
-        URL url = new URL(urlString.toString());
-        url.getContent();
     }
 
+    /**
+     * @return The fields that change the worker, e.g. "dw=Disable", without the ones that identify it
+     */
+    private static String getAction(Map<String, String> fields) {
+        Map<String, String> changes = new LinkedHashMap<String, String>(fields);
+        for (String name : LINK_FIELDS) {
+            changes.remove(name);
+        }
+        return QueryStrings.encode(changes);
+    }
 
-    private NodeList getConfiguredBalancers(String urlString,
-                                            final List<String> balancerNames) throws IOException, ParserException {
-        URL url = new URL(urlString);
-
-        org.htmlparser.Parser parser = new org.htmlparser.Parser(url.openConnection());
-
-        return parser.extractAllNodesThatMatch(new NodeFilter() {
-            @Override
-            public boolean accept(Node node) {
-                if (!node.getText().equals("h3")) {
-                    return false;
-                }
-                Node firstChild = node.getFirstChild();
-                if (firstChild == null) {
-                    return false;
-                }
-                boolean found = false;
-                if (firstChild.getText().startsWith("LoadBalancer Status for")) {
-                    for (String balancerName : balancerNames) {
-                        if (firstChild.getText().endsWith("://" + balancerName)) {
-                            found = true;
-                            break;
-                        }
-                    }
-                }
-                return found;
+    /**
+     * The protocol is decided once per PageGetter, from the status the workers were read from.
+     */
+    private synchronized UpdateProtocol getUpdateProtocol() throws IOException {
+        if (updateProtocol == null) {
+            StatusSnapshot snapshot = statusCache.peek(balanceManagerHost);
+            if (snapshot == null) {
+                snapshot = statusCache.get(balanceManagerHost);
             }
-        });
+            updateProtocol = snapshot.getUpdateProtocol();
+            LOGGER.debug("Using {} for {}", updateProtocol.getClass().getSimpleName(), balanceManagerHost);
+        }
+        return updateProtocol;
     }
-
 }
@@ -0,0 +1,18 @@
+package se.mt.loadbalancerupdater;
+
+import java.util.List;
+
+/**
+ * Progress callbacks from a RollingOperation, called on the thread running it.
+ */
+public interface RollingListener {
+
+    void waveStarted(int waveNumber, int waveCount, List<String> searchStrings);
+
+    void phaseStarted(int waveNumber, RollingOperation.Phase phase);
+
+    /**
+     * @param failure   Null on success
+     */
+    void finished(int wavesCompleted, Exception failure);
+}
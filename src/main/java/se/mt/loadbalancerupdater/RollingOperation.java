@@ -0,0 +1,227 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes the workers of a config out of service a few at a time, e.g. for a rolling restart.
+ * <p/>
+ * The search strings of the config are split into waves. For each wave the matching workers are
+ * disabled on all hosts in parallel, the operation waits until every host shows them as disabled
+ * and for them to have no busy requests, see DrainWatcher, runs the hook, then enables them again and waits until they are back in service
+ * before starting the next wave. A wave is never started if it would leave less than the given
+ * fraction of the workers on a host in service.
+ */
+public class RollingOperation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollingOperation.class);
+
+    public enum Phase {
+        CHECKING, DISABLING, DRAINING, RUNNING_HOOK, ENABLING, VERIFYING
+    }
+
+    private static final long STATE_POLL_INTERVAL = 1000;
+    private static final int DEFAULT_DRAIN_WAIT = 5000;
+    private static final int DEFAULT_STATE_TIMEOUT = 60000;
+
+    private OperationEngine operationEngine;
+    private BalancerConfig config;
+    private int waveSize;
+    private double minInService;
+    private WaveHook hook;
+    private RollingListener listener;
+    private long drainWaitMillis = Settings.getInt(Settings.ROLLING_DRAIN_WAIT, DEFAULT_DRAIN_WAIT);
+    private long stateTimeoutMillis = Settings.getInt(Settings.ROLLING_STATE_TIMEOUT, DEFAULT_STATE_TIMEOUT);
+
+    /**
+     * @param waveSize      Max number of search strings taken out of service at once
+     * @param minInService  The fraction, 0 to 1, of the workers on each host that must stay in service
+     * @param hook          Run while a wave is out of service, may be null
+     * @param listener      Receives progress, may be null
+     */
+    public RollingOperation(OperationEngine operationEngine, BalancerConfig config, int waveSize, double minInService,
+                            WaveHook hook, RollingListener listener) {
+        this.operationEngine = operationEngine;
+        this.config = config;
+        this.waveSize = waveSize;
+        this.minInService = minInService;
+        this.hook = hook;
+        this.listener = listener;
+    }
+
+    public void setDrainWaitMillis(long drainWaitMillis) {
+        this.drainWaitMillis = drainWaitMillis;
+    }
+
+    /**
+     * Splits the search strings into waves, made smaller than requested if needed to keep
+     * the minimum fraction of the search strings in service.
+     */
+    public List<List<String>> planWaves() {
+        List<String> searchStrings = config.getWorkerSearchStrings();
+        int maxOutOfService = (int) Math.floor(searchStrings.size() * (1 - minInService) + 1e-9);
+        if (maxOutOfService < 1) {
+            throw new IllegalArgumentException("Can't keep " + (int) (minInService * 100) + "% of "
+                    + searchStrings.size() + " search strings in service while taking any out");
+        }
+        int size = Math.max(1, Math.min(waveSize, maxOutOfService));
+        if (size != waveSize) {
+            LOGGER.info("Wave size reduced from {} to {} to keep enough workers in service", waveSize, size);
+        }
+
+        List<List<String>> waves = new ArrayList<List<String>>();
+        for (int i = 0; i < searchStrings.size(); i += size) {
+            waves.add(new ArrayList<String>(searchStrings.subList(i, Math.min(i + size, searchStrings.size()))));
+        }
+        return waves;
+    }
+
+    /**
+     * Runs all waves, blocking until done. Stops at the first failure, leaving the failed wave
+     * in whatever state it reached so that someone can look at it.
+     */
+    public void run() throws Exception {
+        List<List<String>> waves = planWaves();
+        int completed = 0;
+        try {
+            for (List<String> wave : waves) {
+                int waveNumber = completed + 1;
+                LOGGER.info("Starting wave {} of {}: {}", new Object[]{waveNumber, waves.size(), wave});
+                if (listener != null) {
+                    listener.waveStarted(waveNumber, waves.size(), wave);
+                }
+                runWave(waveNumber, wave);
+                completed++;
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Rolling operation stopped after " + completed + " waves", e);
+            if (listener != null) {
+                listener.finished(completed, e);
+            }
+            throw e;
+        }
+        LOGGER.info("Rolling operation done, {} waves", completed);
+        if (listener != null) {
+            listener.finished(completed, null);
+        }
+    }
+
+    private void runWave(int waveNumber, List<String> wave) throws Exception {
+        phase(waveNumber, Phase.CHECKING);
+        checkInService(wave);
+
+        phase(waveNumber, Phase.DISABLING);
+        HostUpdater disabled = update(wave, false);
+
+        phase(waveNumber, Phase.DRAINING);
+        awaitState(wave, false);
+        awaitDrained(wave, disabled);
+
+        if (hook != null) {
+            phase(waveNumber, Phase.RUNNING_HOOK);
+            hook.run(wave);
+        }
+
+        phase(waveNumber, Phase.ENABLING);
+        update(wave, true);
+
+        phase(waveNumber, Phase.VERIFYING);
+        awaitState(wave, true);
+    }
+
+    private void phase(int waveNumber, Phase phase) {
+        LOGGER.debug("Wave {}: {}", waveNumber, phase);
+        if (listener != null) {
+            listener.phaseStarted(waveNumber, phase);
+        }
+    }
+
+    private void checkInService(List<String> wave) throws Exception {
+        WorkerMatcher matcher = config.getWorkerMatcher().select(wave);
+        for (String host : config.getBalancerHosts()) {
+            int total = 0;
+            int inService = 0;
+            for (Worker worker : getWorkers(host)) {
+                total++;
+                if (worker.isUsable() && !matcher.matches(worker)) {
+                    inService++;
+                }
+            }
+            if (total > 0 && inService < minInService * total) {
+                throw new IllegalStateException("Taking " + wave + " out of service would leave only " + inService
+                        + " of " + total + " workers in service on " + host);
+            }
+        }
+    }
+
+    private HostUpdater update(List<String> wave, boolean enable) throws Exception {
+        HostUpdater hostUpdater = new HostUpdater(operationEngine, config.getBalancerNames(),
+                config.getWorkerMatcher().select(wave), enable);
+        OperationResult result = operationEngine.execute(config.getBalancerHosts(), hostUpdater, null).await();
+        if (!result.isSuccessful()) {
+            throw new IOException((enable ? "Enabling " : "Disabling ") + wave + " failed on " + result.getFailures().keySet(),
+                    result.getFailures().values().iterator().next());
+        }
+        return hostUpdater;
+    }
+
+    /**
+     * Waits until the disabled workers have no busy requests, or for drainWaitMillis on hosts that don't tell.
+     */
+    private void awaitDrained(List<String> wave, HostUpdater disabled) throws Exception {
+        Map<String, OrderedMultiMap<String, Worker>> targets = disabled.getTargets();
+        DrainWatcher drainWatcher = new DrainWatcher(operationEngine, config.getBalancerNames(), targets);
+        drainWatcher.setFallbackWaitMillis(drainWaitMillis);
+        OperationResult result = drainWatcher.await();
+        if (!result.isSuccessful()) {
+            throw new IOException(wave + " did not drain on " + result.getFailures().keySet(),
+                    result.getFailures().values().iterator().next());
+        }
+    }
+
+    /**
+     * Waits until all hosts show the workers of the wave as usable, or as disabled.
+     */
+    private void awaitState(List<String> wave, boolean usable) throws Exception {
+        WorkerMatcher matcher = config.getWorkerMatcher().select(wave);
+        long deadline = System.currentTimeMillis() + stateTimeoutMillis;
+        while (true) {
+            String pendingHost = null;
+            for (String host : config.getBalancerHosts()) {
+                for (Worker worker : getWorkers(host)) {
+                    if (matcher.matches(worker) && (usable ? !worker.isUsable() : !worker.isDisabled())) {
+                        pendingHost = host;
+                        break;
+                    }
+                }
+                if (pendingHost != null) {
+                    break;
+                }
+            }
+            if (pendingHost == null) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Timed out waiting for " + wave + " to become " + (usable ? "usable" : "disabled")
+                        + " on " + pendingHost);
+            }
+            Thread.sleep(STATE_POLL_INTERVAL);
+        }
+    }
+
+    private List<Worker> getWorkers(String host) throws Exception {
+        OrderedMultiMap<String, Worker> workerMap = new PageGetter(host, config.getBalancerNames()).getWorkers(true);
+        List<Worker> workers = new ArrayList<Worker>();
+        for (Map.Entry<String, Collection<Worker>> entry : workerMap.getMap().entrySet()) {
+            workers.addAll(entry.getValue());
+        }
+        return workers;
+    }
+}
@@ -0,0 +1,117 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tuning knobs that are not part of a BalancerConfig. They are read from system properties
+ * prefixed with "lbupdater.", e.g. -Dlbupdater.host.threads=4
+ */
+public class Settings {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Settings.class);
+
+    private static final String PREFIX = "lbupdater.";
+
+    // Max number of balancer hosts that are updated at the same time
+    public static final String HOST_THREADS = "host.threads";
+
+    // Max number of workers on one balancer host that are updated at the same time
+    public static final String WORKER_CONCURRENCY = "worker.concurrency";
+
+    // Timeouts in milliseconds for HTTP requests to the balancers
+    public static final String HTTP_CONNECT_TIMEOUT = "http.connect.timeout";
+    public static final String HTTP_READ_TIMEOUT = "http.read.timeout";
+
+    // Max number of simultaneous HTTP connections to one balancer host
+    public static final String HTTP_MAX_CONNECTIONS_PER_HOST = "http.max.connections.per.host";
+
+    // How long in milliseconds a fetched status page is reused before fetching it again
+    public static final String STATUS_CACHE_TTL = "status.cache.ttl";
+
+    // Set to 0 to always read the HTML status page, even from balancers that can return XML
+    public static final String STATUS_XML = "status.xml";
+
+    // Background status polling: number of threads shared by all hosts, and the interval range in milliseconds
+    public static final String POLLER_THREADS = "poller.threads";
+    public static final String POLL_MIN_INTERVAL = "poll.min.interval";
+    public static final String POLL_MAX_INTERVAL = "poll.max.interval";
+
+    // Rolling operations: milliseconds to let a disabled wave drain on hosts that don't show Busy (Apache 2.2),
+    // also used by --wait-idle and the Drain button, and to wait for workers to change state
+    public static final String ROLLING_DRAIN_WAIT = "rolling.drain.wait";
+    public static final String ROLLING_STATE_TIMEOUT = "rolling.state.timeout";
+
+    // Milliseconds to keep re-reading hosts after an update until the workers show the new state
+    public static final String VERIFY_TIMEOUT = "verify.timeout";
+
+    // Milliseconds to wait for workers that were taken out of service to have no busy requests
+    public static final String DRAIN_TIMEOUT = "drain.timeout";
+
+    // Number of configs whose prepared panels are kept for switching back to them
+    public static final String VIEW_CACHE_SIZE = "view.cache.size";
+
+    // Milliseconds between samples of the workers' traffic counters while polling, 0 to not sample,
+    // and the number of samples kept per worker
+    public static final String TRAFFIC_SAMPLE_INTERVAL = "traffic.sample.interval";
+    public static final String TRAFFIC_SAMPLES = "traffic.samples";
+
+    // Milliseconds between checks of the config file for changes, 0 to not reload it
+    public static final String CONFIG_WATCH_INTERVAL = "config.watch.interval";
+
+    // Set to 0 to keep the per-phase timings out of JMX
+    public static final String METRICS_JMX = "metrics.jmx";
+
+    // Regular expressions for the parts of a status page that change without mattering, e.g. traffic counters.
+    // Given as lbupdater.status.volatile.1, lbupdater.status.volatile.2 and so on, they replace the defaults.
+    public static final String STATUS_VOLATILE = "status.volatile";
+
+    // Set to 0 to not journal changes, and the journal file, by default loadbalancerupdater.journal in the home directory
+    public static final String JOURNAL = "journal";
+    public static final String JOURNAL_FILE = "journal.file";
+
+    private Settings() {
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Bad value for setting {}: {}, using default {}", new Object[]{PREFIX + key, value, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        return value == null || value.trim().length() == 0 ? defaultValue : value.trim();
+    }
+
+    /**
+     * @return The values of key.1, key.2 and so on up to the first one missing, or the defaults if there is no key.1
+     */
+    public static List<String> getStrings(String key, List<String> defaultValues) {
+        List<String> values = new ArrayList<String>();
+        String value;
+        while ((value = System.getProperty(PREFIX + key + "." + (values.size() + 1))) != null) {
+            values.add(value);
+        }
+        return values.isEmpty() ? defaultValues : values;
+    }
+
+    /**
+     * Sets a setting for the rest of the run, unless it was given on the command line.
+     */
+    public static void setDefault(String key, String value) {
+        if (System.getProperty(PREFIX + key) == null) {
+            System.setProperty(PREFIX + key, value);
+        }
+    }
+}
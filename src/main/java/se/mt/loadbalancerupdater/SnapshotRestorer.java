@@ -0,0 +1,68 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Puts the workers of one host back to the state they had in a ClusterSnapshot. Only workers whose disabled,
+ * draining or stopped state differs from the snapshot are submitted, all at once through a WorkerPipeline.
+ * Workers that are not in the snapshot are left alone. Run it over the snapshot's hosts with OperationEngine.execute().
+ */
+public class SnapshotRestorer implements HostTask {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotRestorer.class);
+
+    private OperationEngine operationEngine;
+    private ClusterSnapshot snapshot;
+
+    public SnapshotRestorer(OperationEngine operationEngine, ClusterSnapshot snapshot) {
+        this.operationEngine = operationEngine;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public int run(String host) throws Exception {
+        OrderedMultiMap<String, Worker> saved = snapshot.getWorkers(host);
+        if (saved == null) {
+            return 0;
+        }
+        Map<String, Worker> savedWorkers = new HashMap<String, Worker>();
+        for (Map.Entry<String, Collection<Worker>> entry : saved.getMap().entrySet()) {
+            for (Worker worker : entry.getValue()) {
+                savedWorkers.put(entry.getKey() + '\u0000' + worker.getName(), worker);
+            }
+        }
+
+        final PageGetter getter = new PageGetter(host, snapshot.getBalancerNames());
+        WorkerPipeline pipeline = operationEngine.newWorkerPipeline();
+        for (Map.Entry<String, Collection<Worker>> entry : getter.getWorkers(true).getMap().entrySet()) {
+            for (final Worker worker : entry.getValue()) {
+                Worker savedWorker = savedWorkers.get(entry.getKey() + '\u0000' + worker.getName());
+                if (savedWorker == null || savedWorker.hasSameServiceState(worker)) {
+                    continue;
+                }
+                final DisableMode mode = savedWorker.getDisableMode();
+                LOGGER.debug("{} {} on {}", new Object[]{mode == null ? "Enabling" : "Setting " + mode,
+                        worker.getName(), host});
+                pipeline.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (mode == null) {
+                            getter.setEnabled(worker, true);
+                        } else {
+                            getter.setDisabled(worker, mode);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        return pipeline.awaitAll();
+    }
+}
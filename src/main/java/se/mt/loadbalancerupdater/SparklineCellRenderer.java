@@ -0,0 +1,96 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.metrics.TrafficCounter;
+import se.mt.loadbalancerupdater.metrics.TrafficSeries;
+
+import javax.swing.*;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+
+/**
+ * Draws the request rate of a worker over its TrafficSeries as a small line, with the latest rate as text.
+ * A worker that gets no requests shows a flat line at the bottom.
+ */
+public class SparklineCellRenderer extends JComponent implements TableCellRenderer {
+
+    private static final Color LINE_COLOR = new Color(0, 90, 160);
+    private static final int TEXT_WIDTH = 60;
+
+    private TrafficSeries series;
+    // Reused between paints, only touched on the EDT
+    private double[] rates = new double[0];
+    private boolean selected;
+    private Color selectionBackground;
+    private Color selectionForeground;
+
+    public SparklineCellRenderer() {
+        setOpaque(true);
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                   boolean hasFocus, int row, int column) {
+        series = value instanceof TrafficSeries ? (TrafficSeries) value : null;
+        selected = isSelected;
+        selectionBackground = table.getSelectionBackground();
+        selectionForeground = table.getSelectionForeground();
+        setBackground(table.getBackground());
+        setForeground(table.getForeground());
+        setFont(table.getFont());
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(selected ? selectionBackground : getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (series == null) {
+            return;
+        }
+        if (rates.length < series.getCapacity()) {
+            rates = new double[series.getCapacity()];
+        }
+        int count = series.getRates(TrafficCounter.ELECTED, rates);
+        if (count == 0) {
+            return;
+        }
+
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        String text = formatRate(rates[count - 1]);
+        FontMetrics metrics = g2.getFontMetrics();
+        g2.setColor(selected ? selectionForeground : getForeground());
+        g2.drawString(text, getWidth() - metrics.stringWidth(text) - 2, (getHeight() + metrics.getAscent()) / 2 - 1);
+
+        double max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, rates[i]);
+        }
+        int width = Math.max(1, getWidth() - TEXT_WIDTH - 4);
+        int top = 2;
+        int height = Math.max(1, getHeight() - 5);
+        // The newest rate is at the right edge, so the line grows from the right until the series is full
+        double step = width / (double) Math.max(1, series.getCapacity() - 2);
+        int previousX = -1;
+        int previousY = -1;
+        g2.setColor(selected ? selectionForeground : LINE_COLOR);
+        for (int i = 0; i < count; i++) {
+            int x = 2 + (int) Math.round(width - (count - 1 - i) * step);
+            int y = top + height - (max > 0 ? (int) Math.round(rates[i] / max * height) : 0);
+            if (previousX >= 0) {
+                g2.drawLine(previousX, previousY, x, y);
+            } else if (count == 1) {
+                g2.fillRect(x - 1, y - 1, 2, 2);
+            }
+            previousX = x;
+            previousY = y;
+        }
+    }
+
+    private static String formatRate(double rate) {
+        if (rate >= 100) {
+            return Math.round(rate) + "/s";
+        }
+        return String.format("%.1f/s", rate);
+    }
+}
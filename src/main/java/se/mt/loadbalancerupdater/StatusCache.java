@@ -0,0 +1,155 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.http.HttpResponse;
+import se.mt.loadbalancerupdater.http.HttpTransport;
+import se.mt.loadbalancerupdater.util.PageDigest;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the latest status page of each balancer host, so that the display and the updates
+ * read the same snapshot instead of each fetching the page on their own.
+ * <p/>
+ * Snapshots are reused until they are older than the TTL, or until the host is invalidated,
+ * which PageGetter does after each submit. Only one fetch per host is in flight at a time.
+ * <p/>
+ * The first fetch from a host asks for the XML status. Apache 2.4 answers with XML, which is smaller and
+ * faster to parse than the page, and is used from then on. Apache 2.2 ignores the parameter and returns the
+ * HTML page, so that host is read as HTML from then on.
+ * <p/>
+ * A fetched page whose PageDigest is the same as the previous one's is not parsed again,
+ * the workers parsed from the previous page are reused, traffic counters and all.
+ * StatusSnapshot.getCurrentWorkers() parses the page anyway, for when the counters matter.
+ */
+public class StatusCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatusCache.class);
+
+    private static final int DEFAULT_TTL = 5000;
+
+    private static final String XML_QUERY = "?xml=1";
+
+    private static StatusCache defaultCache;
+
+    private final HttpTransport transport;
+    private final long ttlMillis;
+    private final boolean useXml = Settings.getInt(Settings.STATUS_XML, 1) != 0;
+    private final PageDigest pageDigest =
+            new PageDigest(Settings.getStrings(Settings.STATUS_VOLATILE, PageDigest.DEFAULT_VOLATILE_PATTERNS));
+    private final ConcurrentMap<String, HostEntry> entries = new ConcurrentHashMap<String, HostEntry>();
+
+    public StatusCache(HttpTransport transport, long ttlMillis) {
+        LOGGER.info("Creating StatusCache with TTL {} ms", ttlMillis);
+        this.transport = transport;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return The cache shared by everything in the application, configured from Settings
+     */
+    public static synchronized StatusCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new StatusCache(HttpTransport.getDefault(), Settings.getInt(Settings.STATUS_CACHE_TTL, DEFAULT_TTL));
+        }
+        return defaultCache;
+    }
+
+    /**
+     * @return A snapshot that is no older than the TTL, fetching a new one if needed
+     */
+    public StatusSnapshot get(String host) throws IOException {
+        HostEntry entry = getEntry(host);
+        StatusSnapshot snapshot = entry.snapshot;
+        if (snapshot != null && snapshot.getAgeMillis() < ttlMillis) {
+            return snapshot;
+        }
+        synchronized (entry) {
+            // Someone else may have fetched it while we waited
+            snapshot = entry.snapshot;
+            if (snapshot != null && snapshot.getAgeMillis() < ttlMillis) {
+                return snapshot;
+            }
+            return fetch(host, entry);
+        }
+    }
+
+    /**
+     * Fetches a new snapshot regardless of the age of the cached one.
+     */
+    public StatusSnapshot refresh(String host) throws IOException {
+        HostEntry entry = getEntry(host);
+        synchronized (entry) {
+            return fetch(host, entry);
+        }
+    }
+
+    /**
+     * @return The cached snapshot regardless of age, or null if there is none
+     */
+    public StatusSnapshot peek(String host) {
+        HostEntry entry = entries.get(host);
+        return entry != null ? entry.snapshot : null;
+    }
+
+    /**
+     * Makes the next get() fetch a new page. Call this after changing anything on the host.
+     */
+    public void invalidate(String host) {
+        HostEntry entry = getEntry(host);
+        entry.generation++;
+        entry.snapshot = null;
+    }
+
+    private StatusSnapshot fetch(String host, HostEntry entry) throws IOException {
+        long generation = entry.generation;
+        long start = System.currentTimeMillis();
+        String url = BalancerConfig.getBalancerManagerUrl(host);
+        boolean askForXml = useXml && !Boolean.FALSE.equals(entry.xml);
+        HttpResponse response = transport.get(askForXml ? url + XML_QUERY : url);
+        StatusSnapshot snapshot = new StatusSnapshot(host, response, start, pageDigest.digest(response.getBody()));
+        LOGGER.debug("Fetched status of {} in {} ms", host, System.currentTimeMillis() - start);
+
+        StatusSnapshot previous = entry.previous;
+        if (previous != null && previous.getDigest() == snapshot.getDigest()) {
+            snapshot.reuseParsed(previous);
+        }
+        entry.previous = snapshot;
+
+        boolean xml = snapshot.isXml();
+        if (entry.xml == null || entry.xml != xml) {
+            LOGGER.info("Balancer {} runs {}, reading its status as {}",
+                    new Object[]{host, response.getHeader("Server"), xml ? "XML" : "HTML"});
+            entry.xml = xml;
+        }
+        // Don't cache a page that may have been fetched before an invalidation
+        if (generation == entry.generation) {
+            entry.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private HostEntry getEntry(String host) {
+        HostEntry entry = entries.get(host);
+        if (entry == null) {
+            HostEntry newEntry = new HostEntry();
+            entry = entries.putIfAbsent(host, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        return entry;
+    }
+
+    private static class HostEntry {
+        private volatile StatusSnapshot snapshot;
+        // The last fetched snapshot, kept after invalidation for comparing digests
+        private volatile StatusSnapshot previous;
+        private volatile long generation;
+        // Null until the first fetch tells if the host supports the XML status
+        private volatile Boolean xml;
+    }
+}
@@ -0,0 +1,27 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.util.List;
+
+/**
+ * Receives changes found by the StatusPoller. Called on the poller's threads.
+ */
+public interface StatusChangeListener {
+
+    /**
+     * Called when at least one worker on a host was added, removed or changed status.
+     *
+     * @param host      The polled host
+     * @param changes   Only the workers that changed
+     * @param workers   All workers on the host, for listeners that need the full picture
+     */
+    void workersChanged(String host, List<WorkerChange> changes, OrderedMultiMap<String, Worker> workers);
+
+    void pollFailed(String host, Exception e);
+
+    /**
+     * Called when the traffic counters of the workers on a host have been added to the TrafficHistory.
+     */
+    void trafficSampled(String host);
+}
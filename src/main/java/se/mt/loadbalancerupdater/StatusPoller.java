@@ -0,0 +1,273 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.metrics.TrafficCounter;
+import se.mt.loadbalancerupdater.metrics.TrafficHistory;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
+import se.mt.loadbalancerupdater.util.NamedThreadFactory;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the status of the watched hosts in the background, on one scheduler shared by all hosts.
+ * <p/>
+ * The interval of each host adapts: it drops to the minimum when something changed or right after
+ * an operation, and doubles after each poll that found nothing new, up to the maximum.
+ * Listeners are only told about the workers that actually changed.
+ * <p/>
+ * The traffic counters of the workers are sampled into the TrafficHistory once per sample interval, polling
+ * the host at least that often. Those polls parse the page even when it only changed in counters.
+ */
+public class StatusPoller {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatusPoller.class);
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_MIN_INTERVAL = 2000;
+    private static final int DEFAULT_MAX_INTERVAL = 30000;
+    private static final int DEFAULT_SAMPLE_INTERVAL = 10000;
+
+    private final ScheduledExecutorService scheduler;
+    private final long minInterval;
+    private final long maxInterval;
+    private final long sampleInterval = Settings.getInt(Settings.TRAFFIC_SAMPLE_INTERVAL, DEFAULT_SAMPLE_INTERVAL);
+    private final TrafficHistory trafficHistory = TrafficHistory.getDefault();
+    private final ConcurrentMap<String, HostPoll> polls = new ConcurrentHashMap<String, HostPoll>();
+    private final List<StatusChangeListener> listeners = new CopyOnWriteArrayList<StatusChangeListener>();
+
+    public StatusPoller() {
+        this(Settings.getInt(Settings.POLLER_THREADS, DEFAULT_THREADS),
+                Settings.getInt(Settings.POLL_MIN_INTERVAL, DEFAULT_MIN_INTERVAL),
+                Settings.getInt(Settings.POLL_MAX_INTERVAL, DEFAULT_MAX_INTERVAL));
+    }
+
+    public StatusPoller(int threads, long minInterval, long maxInterval) {
+        LOGGER.info("Creating StatusPoller: threads = {}, interval = {}-{} ms", new Object[]{threads, minInterval, maxInterval});
+        this.minInterval = Math.max(100, minInterval);
+        this.maxInterval = Math.max(this.minInterval, maxInterval);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, threads),
+                new NamedThreadFactory("status-poller"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler = executor;
+    }
+
+    public void addListener(StatusChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StatusChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts polling a host, the first poll happens after the minimum interval.
+     * Replaces any earlier watch of the same host.
+     */
+    public void watch(String host, List<String> balancerNames) {
+        HostPoll poll = new HostPoll(host, new ArrayList<String>(balancerNames));
+        HostPoll old = polls.put(host, poll);
+        if (old != null) {
+            old.stop();
+        }
+        poll.schedule(minInterval);
+    }
+
+    public void unwatch(String host) {
+        HostPoll poll = polls.remove(host);
+        if (poll != null) {
+            poll.stop();
+        }
+    }
+
+    public void unwatchAll() {
+        for (String host : new ArrayList<String>(polls.keySet())) {
+            unwatch(host);
+        }
+    }
+
+    /**
+     * Polls the hosts as soon as possible and at the minimum interval for a while.
+     * Call this after changing something on them.
+     */
+    public void pollSoon(Collection<String> hosts) {
+        for (String host : hosts) {
+            HostPoll poll = polls.get(host);
+            if (poll != null) {
+                poll.pollSoon();
+            }
+        }
+    }
+
+    public void shutdown() {
+        unwatchAll();
+        scheduler.shutdownNow();
+    }
+
+    private class HostPoll implements Runnable {
+        private final String host;
+        private final List<String> balancerNames;
+        private final PageGetter getter;
+        // Balancer and worker name mapped to the worker as last seen, only touched by the polling thread
+        private Map<String, Worker> lastSeen;
+        // Digest of the page lastSeen was read from
+        private long lastDigest;
+        private long lastSampleTime;
+        private long interval = minInterval;
+        private ScheduledFuture<?> next;
+        private boolean running;
+        private boolean pollAgain;
+        private boolean stopped;
+
+        HostPoll(String host, List<String> balancerNames) {
+            this.host = host;
+            this.balancerNames = balancerNames;
+            this.getter = new PageGetter(host, balancerNames);
+        }
+
+        synchronized void schedule(long delay) {
+            if (stopped) {
+                return;
+            }
+            if (next != null) {
+                next.cancel(false);
+            }
+            next = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void pollSoon() {
+            interval = minInterval;
+            if (running) {
+                pollAgain = true;
+            } else {
+                schedule(0);
+            }
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                running = true;
+                pollAgain = false;
+            }
+            boolean changed = false;
+            try {
+                StatusSnapshot snapshot = getter.getSnapshot(true);
+                OrderedMultiMap<String, Worker> current = null;
+                if (sampleInterval > 0 && snapshot.getFetchTime() - lastSampleTime >= sampleInterval) {
+                    current = snapshot.getCurrentWorkers(balancerNames);
+                    sampleTraffic(snapshot.getFetchTime(), current);
+                }
+                // A page with the same digest as last time differs at most in counters, so there is nothing to show
+                if (lastSeen == null || snapshot.getDigest() != lastDigest) {
+                    OrderedMultiMap<String, Worker> workers = current != null ? current : snapshot.getWorkers(balancerNames);
+                    lastDigest = snapshot.getDigest();
+                    List<WorkerChange> changes = findChanges(workers);
+                    if (!changes.isEmpty()) {
+                        changed = true;
+                        LOGGER.debug("Status of {} changed: {}", host, changes);
+                        for (StatusChangeListener listener : listeners) {
+                            listener.workersChanged(host, changes, workers);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Polling " + host + " failed", e);
+                // Report everything as new once the host is back, listeners may have shown the error instead
+                lastSeen = null;
+                for (StatusChangeListener listener : listeners) {
+                    listener.pollFailed(host, e);
+                }
+            }
+            finishPoll(changed);
+        }
+
+        private synchronized void finishPoll(boolean changed) {
+            running = false;
+            if (pollAgain || changed) {
+                interval = minInterval;
+            } else {
+                interval = Math.min(interval * 2, maxInterval);
+            }
+            schedule(pollAgain ? 0 : getNextDelay());
+        }
+
+        /**
+         * The counters don't change the page digest, so a quiet host backs off to the maximum interval. While
+         * sampling, the next poll still happens when the next sample is due, but never sooner than the minimum.
+         */
+        private long getNextDelay() {
+            if (sampleInterval <= 0) {
+                return interval;
+            }
+            long untilSample = lastSampleTime + sampleInterval - System.currentTimeMillis();
+            return Math.min(interval, Math.max(minInterval, untilSample));
+        }
+
+        private void sampleTraffic(long time, OrderedMultiMap<String, Worker> workers) {
+            lastSampleTime = time;
+            long[] counters = new long[TrafficCounter.values().length];
+            for (Map.Entry<String, Collection<Worker>> entry : workers.getMap().entrySet()) {
+                String balancer = StatusPageParser.getBalancerName(entry.getKey());
+                for (Worker worker : entry.getValue()) {
+                    if (worker.getElected() == Worker.UNKNOWN) {
+                        continue;
+                    }
+                    counters[TrafficCounter.ELECTED.ordinal()] = worker.getElected();
+                    counters[TrafficCounter.TO.ordinal()] = worker.getToBytes();
+                    counters[TrafficCounter.FROM.ordinal()] = worker.getFromBytes();
+                    trafficHistory.record(host, balancer, worker.getName(), time, counters);
+                }
+            }
+            for (StatusChangeListener listener : listeners) {
+                listener.trafficSampled(host);
+            }
+        }
+
+        private List<WorkerChange> findChanges(OrderedMultiMap<String, Worker> workers) {
+            Map<String, Worker> seen = new HashMap<String, Worker>();
+            List<WorkerChange> changes = new ArrayList<WorkerChange>();
+            for (Map.Entry<String, Collection<Worker>> entry : workers.getMap().entrySet()) {
+                String balancer = entry.getKey();
+                for (Worker worker : entry.getValue()) {
+                    String key = balancer + '\u0000' + worker.getName();
+                    seen.put(key, worker);
+                    Worker old = lastSeen != null ? lastSeen.remove(key) : null;
+                    if (old == null || !old.hasSameState(worker)) {
+                        changes.add(new WorkerChange(host, balancer, old, worker));
+                    }
+                }
+            }
+            if (lastSeen != null) {
+                for (Map.Entry<String, Worker> gone : lastSeen.entrySet()) {
+                    String key = gone.getKey();
+                    changes.add(new WorkerChange(host, key.substring(0, key.indexOf('\u0000')), gone.getValue(), null));
+                }
+            }
+            lastSeen = seen;
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.http.HttpResponse;
+import se.mt.loadbalancerupdater.metrics.Metrics;
+import se.mt.loadbalancerupdater.metrics.Phase;
+import se.mt.loadbalancerupdater.metrics.PhaseTimer;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
+import se.mt.loadbalancerupdater.parser.XmlStatusParser;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The balancer-manager status of one host, as fetched at one point in time. Either the HTML page, or the
+ * XML status of Apache 2.4.
+ * The page is parsed at most once for each list of balancer names, and the result is shared
+ * by everyone reading the snapshot, so treat the returned maps as read only.
+ */
+public class StatusSnapshot {
+
+    private final String host;
+    private final HttpResponse response;
+    private final long fetchTime;
+    private UpdateProtocol updateProtocol;
+    private final long digest;
+    private final Map<List<String>, OrderedMultiMap<String, Worker>> parsedWorkers =
+            new HashMap<List<String>, OrderedMultiMap<String, Worker>>();
+    // The keys of parsedWorkers that were taken over from an earlier snapshot, with its traffic counters
+    private final Set<List<String>> reusedKeys = new HashSet<List<String>>();
+
+    StatusSnapshot(String host, HttpResponse response, long fetchTime, long digest) {
+        this.host = host;
+        this.response = response;
+        this.fetchTime = fetchTime;
+        this.digest = digest;
+    }
+
+    /**
+     * @return The digest of the page without its volatile sections, see PageDigest
+     */
+    public long getDigest() {
+        return digest;
+    }
+
+    /**
+     * Takes over what was parsed from an earlier snapshot of the same page, so it isn't parsed again.
+     */
+    synchronized void reuseParsed(StatusSnapshot previous) {
+        synchronized (previous) {
+            parsedWorkers.putAll(previous.parsedWorkers);
+            reusedKeys.addAll(previous.parsedWorkers.keySet());
+            if (updateProtocol == null) {
+                updateProtocol = previous.updateProtocol;
+            }
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public URL getUrl() {
+        return response.getUrl();
+    }
+
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - fetchTime;
+    }
+
+    /**
+     * @return True if this is the XML status of an Apache 2.4 balancer-manager rather than the HTML page
+     */
+    public boolean isXml() {
+        String contentType = response.getHeader("Content-Type");
+        if (contentType != null && contentType.contains("xml")) {
+            return true;
+        }
+        byte[] body = response.getBody();
+        return body.length >= 5 && body[0] == '<' && body[1] == '?' && body[2] == 'x' && body[3] == 'm' && body[4] == 'l';
+    }
+
+    /**
+     * Tells which Apache version serves this balancer-manager, from the status format, the Server header or,
+     * when ServerTokens hides the version, the page itself. Apache 2.2 is assumed when nothing gives it away.
+     */
+    public synchronized UpdateProtocol getUpdateProtocol() throws IOException {
+        if (updateProtocol == null) {
+            updateProtocol = isApache24() ? new Apache24UpdateProtocol() : new Apache22UpdateProtocol();
+        }
+        return updateProtocol;
+    }
+
+    private boolean isApache24() throws IOException {
+        if (isXml()) {
+            return true;
+        }
+        String server = response.getHeader("Server");
+        if (server != null && server.contains("Apache/2.")) {
+            return server.contains("Apache/2.4");
+        }
+        String page = response.getBodyAsString();
+        // Only the 2.4 page shows MaxMembers in the balancer table
+        return page.contains("Apache/2.4") || page.contains("MaxMembers");
+    }
+
+    public HttpResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * @return The workers, possibly parsed from an earlier page that only differed in traffic counters,
+     *         see StatusCache
+     */
+    public synchronized OrderedMultiMap<String, Worker> getWorkers(List<String> balancerNames) throws IOException {
+        OrderedMultiMap<String, Worker> workers = parsedWorkers.get(balancerNames);
+        if (workers == null) {
+            workers = parse(balancerNames);
+        }
+        return workers;
+    }
+
+    /**
+     * @return The workers parsed from this page, so that traffic counters such as Busy are as fetched
+     */
+    public synchronized OrderedMultiMap<String, Worker> getCurrentWorkers(List<String> balancerNames) throws IOException {
+        OrderedMultiMap<String, Worker> workers = parsedWorkers.get(balancerNames);
+        if (workers == null || reusedKeys.contains(balancerNames)) {
+            workers = parse(balancerNames);
+        }
+        return workers;
+    }
+
+    private OrderedMultiMap<String, Worker> parse(List<String> balancerNames) throws IOException {
+        OrderedMultiMap<String, Worker> workers;
+        PhaseTimer timer = Metrics.getDefault().start(Phase.PARSE, host, Metrics.ALL_BALANCERS);
+        try {
+            if (isXml()) {
+                workers = new XmlStatusParser(balancerNames).parse(new ByteArrayInputStream(response.getBody()), response.getUrl());
+            } else {
+                workers = StatusPageParser.forBalancers(balancerNames).parse(response.getBodyReader(), response.getUrl());
+            }
+            timer.success();
+        } finally {
+            timer.stop();
+        }
+        List<String> key = new ArrayList<String>(balancerNames);
+        parsedWorkers.put(key, workers);
+        reusedKeys.remove(key);
+        return workers;
+    }
+}
@@ -0,0 +1,163 @@
+package se.mt.loadbalancerupdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.journal.ChangeJournal;
+import se.mt.loadbalancerupdater.journal.JournalRecord;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+import se.mt.loadbalancerupdater.util.QueryStrings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.ListIterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that submitted changes took effect, by re-reading only the hosts that were updated until the
+ * targeted workers show the requested state. Hosts are re-read in rounds through the OperationEngine,
+ * with a growing pause between rounds, until all workers are confirmed or the deadline has passed.
+ */
+public class SubmitVerifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubmitVerifier.class);
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+    private static final int FIRST_RETRY_DELAY = 200;
+    private static final int MAX_RETRY_DELAY = 2000;
+
+    private OperationEngine operationEngine;
+    private List<String> balancerNames;
+    private long timeoutMillis = Settings.getInt(Settings.VERIFY_TIMEOUT, DEFAULT_TIMEOUT);
+
+    public SubmitVerifier(OperationEngine operationEngine, List<String> balancerNames) {
+        this.operationEngine = operationEngine;
+        this.balancerNames = balancerNames;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Blocks until all targets are confirmed or the deadline has passed.
+     *
+     * @param targets   Host mapped to the submitted workers by balancer heading, see HostUpdater.getTargets()
+     * @param enable    The requested state
+     * @param listener  Told about the results of each host as they are known, may be null
+     * @return          The result for every targeted worker
+     */
+    public List<VerifiedWorker> verify(Map<String, OrderedMultiMap<String, Worker>> targets, final boolean enable,
+                                       final VerificationListener listener) throws InterruptedException {
+        final List<VerifiedWorker> results = new ArrayList<VerifiedWorker>();
+        // Host mapped to the workers that are not confirmed yet, as last seen
+        final Map<String, List<VerifiedWorker>> pending = new HashMap<String, List<VerifiedWorker>>();
+        for (Map.Entry<String, OrderedMultiMap<String, Worker>> entry : targets.entrySet()) {
+            List<VerifiedWorker> workers = new ArrayList<VerifiedWorker>();
+            for (Map.Entry<String, Collection<Worker>> balancer : entry.getValue().getMap().entrySet()) {
+                for (Worker worker : balancer.getValue()) {
+                    workers.add(new VerifiedWorker(entry.getKey(), balancer.getKey(), worker, false));
+                }
+            }
+            if (!workers.isEmpty()) {
+                pending.put(entry.getKey(), workers);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long delay = FIRST_RETRY_DELAY;
+        while (true) {
+            List<String> hosts;
+            synchronized (pending) {
+                hosts = new ArrayList<String>(pending.keySet());
+            }
+            if (hosts.isEmpty()) {
+                break;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                for (String host : hosts) {
+                    List<VerifiedWorker> failed;
+                    synchronized (pending) {
+                        failed = pending.remove(host);
+                        results.addAll(failed);
+                    }
+                    LOGGER.warn("{} workers on {} did not get the requested state", failed.size(), host);
+                    journal(failed, enable);
+                    if (listener != null) {
+                        listener.workersVerified(host, failed);
+                    }
+                }
+                break;
+            }
+            Thread.sleep(Math.min(delay, Math.max(0, deadline - System.currentTimeMillis())));
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+
+            operationEngine.execute(hosts, new HostTask() {
+                @Override
+                public int run(String host) throws Exception {
+                    List<VerifiedWorker> hostPending;
+                    synchronized (pending) {
+                        hostPending = pending.get(host);
+                    }
+                    OrderedMultiMap<String, Worker> current = new PageGetter(host, balancerNames).getWorkers(true);
+                    List<VerifiedWorker> confirmed = new ArrayList<VerifiedWorker>();
+                    for (ListIterator<VerifiedWorker> it = hostPending.listIterator(); it.hasNext(); ) {
+                        VerifiedWorker target = it.next();
+                        Worker worker = find(current, target.getBalancer(), target.getWorker().getName());
+                        if (worker == null) {
+                            continue;
+                        }
+                        if (enable != worker.isOutOfService()) {
+                            it.remove();
+                            confirmed.add(new VerifiedWorker(host, target.getBalancer(), worker, true));
+                        } else {
+                            it.set(new VerifiedWorker(host, target.getBalancer(), worker, false));
+                        }
+                    }
+                    synchronized (pending) {
+                        if (hostPending.isEmpty()) {
+                            pending.remove(host);
+                        }
+                        results.addAll(confirmed);
+                    }
+                    journal(confirmed, enable);
+                    if (listener != null && !confirmed.isEmpty()) {
+                        listener.workersVerified(host, confirmed);
+                    }
+                    return confirmed.size();
+                }
+            }, null).await();
+        }
+        return results;
+    }
+
+    private void journal(List<VerifiedWorker> workers, boolean enable) {
+        ChangeJournal journal = ChangeJournal.getDefault();
+        if (journal == null) {
+            return;
+        }
+        for (VerifiedWorker verified : workers) {
+            // Same balancer name as the submits are journaled with
+            String balancer = QueryStrings.parse(verified.getWorker().getUrl()).get("b");
+            journal.record(new JournalRecord(verified.getHost(), balancer, verified.getWorker().getName(), enable ? "verify enabled" : "verify disabled",
+                    (verified.isConfirmed() ? "CONFIRMED " : "NOT CONFIRMED ") + verified.getWorker().getStatus()));
+        }
+    }
+
+    /**
+     * @param balancer  The balancer heading
+     * @return          The named worker of the balancer, or null
+     */
+    static Worker find(OrderedMultiMap<String, Worker> workers, String balancer, String name) {
+        Collection<Worker> balancerWorkers = workers.get(balancer);
+        if (balancerWorkers != null) {
+            for (Worker worker : balancerWorkers) {
+                if (worker.getName().equals(name)) {
+                    return worker;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,28 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.http.HttpTransport;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * How changes to a worker are sent to a balancer-manager, which differs between Apache versions.
+ */
+public interface UpdateProtocol {
+
+    /**
+     * Adds the fields that enable or disable the worker to the fields that identify it (b, w and nonce).
+     */
+    void setEnabled(Map<String, String> fields, boolean enable);
+
+    /**
+     * Adds the fields that take the worker out of service in the given way, replacing any other way it was
+     * out of service in. Enabling it undoes all of them.
+     */
+    void setDisabled(Map<String, String> fields, DisableMode mode);
+
+    /**
+     * Sends the fields to the balancer-manager. The response is read but not parsed.
+     */
+    void submit(HttpTransport transport, String managerUrl, Map<String, String> fields) throws IOException;
+}
@@ -0,0 +1,14 @@
+package se.mt.loadbalancerupdater;
+
+import java.util.List;
+
+/**
+ * Gets the results of a SubmitVerifier as they are known. Called from the verifier's threads.
+ */
+public interface VerificationListener {
+
+    /**
+     * Called when workers of a host are confirmed, and at the deadline for the workers that never were.
+     */
+    void workersVerified(String host, List<VerifiedWorker> workers);
+}
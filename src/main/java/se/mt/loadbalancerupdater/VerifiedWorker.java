@@ -0,0 +1,44 @@
+package se.mt.loadbalancerupdater;
+
+/**
+ * The outcome of verifying that a submit for one worker took effect.
+ */
+public class VerifiedWorker {
+
+    private final String host;
+    private final String balancer;
+    private final Worker worker;
+    private final boolean confirmed;
+
+    public VerifiedWorker(String host, String balancer, Worker worker, boolean confirmed) {
+        this.host = host;
+        this.balancer = balancer;
+        this.worker = worker;
+        this.confirmed = confirmed;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return The balancer heading, as the keys of PageGetter.getWorkers()
+     */
+    public String getBalancer() {
+        return balancer;
+    }
+
+    /**
+     * @return The worker as last read from the host
+     */
+    public Worker getWorker() {
+        return worker;
+    }
+
+    /**
+     * @return True if the host showed the requested state, false if it didn't before the deadline
+     */
+    public boolean isConfirmed() {
+        return confirmed;
+    }
+}
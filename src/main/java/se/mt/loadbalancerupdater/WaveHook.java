@@ -0,0 +1,17 @@
+package se.mt.loadbalancerupdater;
+
+import java.util.List;
+
+/**
+ * Work done by a RollingOperation while a wave of workers is out of service, e.g. deploying and restarting them.
+ */
+public interface WaveHook {
+
+    /**
+     * Called when the workers of a wave are disabled and drained. Throwing aborts the
+     * rolling operation and leaves the wave disabled.
+     *
+     * @param searchStrings The search strings of the workers in the wave
+     */
+    void run(List<String> searchStrings) throws Exception;
+}
@@ -1,13 +1,56 @@
 package se.mt.loadbalancerupdater;
 
 public class Worker {
+
+    // Busy is only shown by Apache 2.4
+    public static final int UNKNOWN = -1;
+
     private String name;
 
     private String url;
 
+    // The status column of the balancer-manager, such as "Ok", "Dis" or "Init Ok"
+    private String status;
+
+    private String route;
+    private String redirect;
+    private String loadFactor;
+    private String lbSet;
+
+    // Traffic counters, which change all the time
+    private long elected = UNKNOWN;
+    private int busy = UNKNOWN;
+    private String to;
+    private String from;
+
     public Worker(String name, String url) {
+        this(name, url, null);
+    }
+
+    public Worker(String name, String url, String status) {
         this.name = name;
         this.url = url;
+        this.status = status;
+    }
+
+    /**
+     * @param loadFactor    As shown, e.g. "1" on 2.2 and "1.00" on 2.4
+     * @param elected       The number of requests sent to the worker, or UNKNOWN
+     * @param busy          The number of requests the worker is handling right now, or UNKNOWN
+     * @param to            Bytes sent to the worker, as shown, e.g. "3.0K"
+     * @param from          Bytes read from the worker, as shown
+     */
+    public Worker(String name, String url, String status, String route, String redirect, String loadFactor,
+                  String lbSet, long elected, int busy, String to, String from) {
+        this(name, url, status);
+        this.route = route;
+        this.redirect = redirect;
+        this.loadFactor = loadFactor;
+        this.lbSet = lbSet;
+        this.elected = elected;
+        this.busy = busy;
+        this.to = to;
+        this.from = from;
     }
 
     public String getName() {
@@ -18,4 +61,160 @@ public class Worker {
         return url;
     }
 
+    public String getStatus() {
+        return status;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public String getRedirect() {
+        return redirect;
+    }
+
+    public String getLoadFactor() {
+        return loadFactor;
+    }
+
+    public String getLbSet() {
+        return lbSet;
+    }
+
+    public long getElected() {
+        return elected;
+    }
+
+    public int getBusy() {
+        return busy;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * @return Bytes sent to the worker, or UNKNOWN. The HTML page rounds them, e.g. to "3.0K".
+     */
+    public long getToBytes() {
+        return parseSize(to);
+    }
+
+    /**
+     * @return Bytes read from the worker, or UNKNOWN
+     */
+    public long getFromBytes() {
+        return parseSize(from);
+    }
+
+    /**
+     * @return True if the balancer-manager shows the worker as disabled, "Dis" on 2.2 and "Init Dis" on 2.4
+     */
+    public boolean isDisabled() {
+        return hasStatusFlag("Dis");
+    }
+
+    /**
+     * @return True if the worker is in drain mode, "Drn" on 2.4
+     */
+    public boolean isDraining() {
+        return hasStatusFlag("Drn");
+    }
+
+    /**
+     * @return True if the worker is stopped, "Stop" on 2.4
+     */
+    public boolean isStopped() {
+        return hasStatusFlag("Stop");
+    }
+
+    /**
+     * @return True if the worker has been taken out of service in any of the ways in DisableMode
+     */
+    public boolean isOutOfService() {
+        return isDisabled() || isDraining() || isStopped();
+    }
+
+    /**
+     * @return The way the worker is out of service, or null if it is in service. A worker with several of the
+     * flags gets the one that lets the fewest requests through.
+     */
+    public DisableMode getDisableMode() {
+        if (isStopped()) {
+            return DisableMode.STOPPED;
+        } else if (isDisabled()) {
+            return DisableMode.DISABLED;
+        } else if (isDraining()) {
+            return DisableMode.DRAINING;
+        }
+        return null;
+    }
+
+    /**
+     * @return True if the worker has the same out of service flags as the other one
+     */
+    public boolean hasSameServiceState(Worker other) {
+        return isDisabled() == other.isDisabled() && isDraining() == other.isDraining()
+                && isStopped() == other.isStopped();
+    }
+
+    /**
+     * @return True if the balancer may send requests to the worker. 2.4 shows a drained worker as "Init Drn Ok",
+     * so Ok alone is not enough.
+     */
+    public boolean isUsable() {
+        return hasStatusFlag("Ok") && !isOutOfService();
+    }
+
+    private boolean hasStatusFlag(String flag) {
+        if (status == null) {
+            return false;
+        }
+        for (String part : status.split("\\s+")) {
+            if (part.equals(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if the other worker has the same state as this one, ignoring traffic counters
+     */
+    public boolean hasSameState(Worker other) {
+        return equal(status, other.status) && equal(route, other.route) && equal(redirect, other.redirect)
+                && equal(loadFactor, other.loadFactor) && equal(lbSet, other.lbSet);
+    }
+
+    /**
+     * @return The bytes of a size as Apache shows it, e.g. "41", "3.0K" or "1.2M", or UNKNOWN
+     */
+    static long parseSize(String size) {
+        if (size == null) {
+            return UNKNOWN;
+        }
+        String value = size.trim();
+        if (value.length() == 0) {
+            return UNKNOWN;
+        }
+        long multiplier = 1;
+        int unit = "KMGTPE".indexOf(Character.toUpperCase(value.charAt(value.length() - 1)));
+        if (unit >= 0) {
+            multiplier = 1L << (10 * (unit + 1));
+            value = value.substring(0, value.length() - 1).trim();
+        }
+        try {
+            return multiplier == 1 ? Long.parseLong(value) : (long) (Double.parseDouble(value) * multiplier);
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
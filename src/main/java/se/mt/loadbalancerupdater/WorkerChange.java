@@ -0,0 +1,54 @@
+package se.mt.loadbalancerupdater;
+
+/**
+ * A worker that was added, removed or changed status between two polls of a host.
+ */
+public class WorkerChange {
+
+    private final String host;
+    private final String balancer;
+    private final Worker oldWorker;
+    private final Worker newWorker;
+
+    public WorkerChange(String host, String balancer, Worker oldWorker, Worker newWorker) {
+        this.host = host;
+        this.balancer = balancer;
+        this.oldWorker = oldWorker;
+        this.newWorker = newWorker;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getBalancer() {
+        return balancer;
+    }
+
+    /**
+     * @return The worker as it was, or null if it is new
+     */
+    public Worker getOldWorker() {
+        return oldWorker;
+    }
+
+    /**
+     * @return The worker as it is now, or null if it is gone
+     */
+    public Worker getNewWorker() {
+        return newWorker;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("WorkerChange");
+        sb.append("{host='").append(host).append('\'');
+        sb.append(", balancer='").append(balancer).append('\'');
+        sb.append(", worker='").append(newWorker != null ? newWorker.getName() : oldWorker.getName()).append('\'');
+        sb.append(", status=").append(oldWorker != null ? oldWorker.getStatus() : null);
+        sb.append(" -> ").append(newWorker != null ? newWorker.getStatus() : null);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,165 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.util.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which worker search strings match a worker name, for all search strings in one pass over the name.
+ * <p/>
+ * Plain search strings match anywhere in the name and are compiled into one Aho-Corasick automaton.
+ * Search strings starting with "glob:" must match the whole name, with * and ? as wildcards.
+ * Search strings starting with "regex:" are Java regular expressions that match anywhere in the name.
+ * <p/>
+ * Compile once per configuration with compile(), and use select() to get a matcher for some of the search strings
+ * without compiling again.
+ */
+public class WorkerMatcher {
+
+    public static final String GLOB_PREFIX = "glob:";
+    public static final String REGEX_PREFIX = "regex:";
+
+    private final List<String> selectors;
+    private final AhoCorasick substrings;
+    // Maps automaton pattern index to selector index
+    private final int[] substringSelectors;
+    // Per selector, null for plain search strings
+    private final Pattern[] patterns;
+    private final boolean[] fullMatch;
+    // The selectors this matcher answers for
+    private final BitSet active;
+
+    private WorkerMatcher(List<String> selectors, AhoCorasick substrings, int[] substringSelectors,
+                          Pattern[] patterns, boolean[] fullMatch, BitSet active) {
+        this.selectors = selectors;
+        this.substrings = substrings;
+        this.substringSelectors = substringSelectors;
+        this.patterns = patterns;
+        this.fullMatch = fullMatch;
+        this.active = active;
+    }
+
+    public static WorkerMatcher compile(List<String> selectors) {
+        List<String> selectorList = Collections.unmodifiableList(new ArrayList<String>(selectors));
+        List<String> plain = new ArrayList<String>();
+        List<Integer> plainSelectors = new ArrayList<Integer>();
+        Pattern[] patterns = new Pattern[selectorList.size()];
+        boolean[] fullMatch = new boolean[selectorList.size()];
+
+        for (int i = 0; i < selectorList.size(); i++) {
+            String selector = selectorList.get(i);
+            if (selector.startsWith(GLOB_PREFIX)) {
+                patterns[i] = Pattern.compile(globToRegex(selector.substring(GLOB_PREFIX.length())));
+                fullMatch[i] = true;
+            } else if (selector.startsWith(REGEX_PREFIX)) {
+                patterns[i] = Pattern.compile(selector.substring(REGEX_PREFIX.length()));
+            } else {
+                plain.add(selector);
+                plainSelectors.add(i);
+            }
+        }
+
+        int[] substringSelectors = new int[plainSelectors.size()];
+        for (int i = 0; i < substringSelectors.length; i++) {
+            substringSelectors[i] = plainSelectors.get(i);
+        }
+        BitSet active = new BitSet(selectorList.size());
+        active.set(0, selectorList.size());
+        return new WorkerMatcher(selectorList, new AhoCorasick(plain), substringSelectors, patterns, fullMatch, active);
+    }
+
+    /**
+     * @return A matcher for only the given search strings. Shares the compiled automaton if all of them are
+     *         search strings of this matcher, otherwise compiles a new one.
+     */
+    public WorkerMatcher select(Collection<String> subset) {
+        BitSet selected = new BitSet(selectors.size());
+        for (String selector : subset) {
+            int index = selectors.indexOf(selector);
+            if (index < 0) {
+                return compile(new ArrayList<String>(subset));
+            }
+            selected.set(index);
+        }
+        return new WorkerMatcher(selectors, substrings, substringSelectors, patterns, fullMatch, selected);
+    }
+
+    /**
+     * @return The search strings this matcher answers for
+     */
+    public List<String> getSelectors() {
+        List<String> result = new ArrayList<String>();
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+            result.add(selectors.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return True if any of the search strings matches the worker
+     */
+    public boolean matches(Worker worker) {
+        return matches(worker.getName());
+    }
+
+    public boolean matches(String name) {
+        return !classify(name).isEmpty();
+    }
+
+    /**
+     * @return The search strings that match the name, as indexes into the list this matcher was compiled from
+     */
+    public BitSet classify(String name) {
+        final BitSet matched = new BitSet(selectors.size());
+        if (substrings.getPatternCount() > 0) {
+            substrings.search(name, new AhoCorasick.MatchHandler() {
+                @Override
+                public boolean match(int pattern, int end) {
+                    matched.set(substringSelectors[pattern]);
+                    return true;
+                }
+            });
+        }
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+            Pattern pattern = patterns[i];
+            if (pattern != null) {
+                if (fullMatch[i] ? pattern.matcher(name).matches() : pattern.matcher(name).find()) {
+                    matched.set(i);
+                }
+            }
+        }
+        matched.and(active);
+        return matched;
+    }
+
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerMatcher" + getSelectors();
+    }
+}
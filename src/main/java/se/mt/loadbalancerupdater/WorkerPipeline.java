@@ -0,0 +1,72 @@
+package se.mt.loadbalancerupdater;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs per-worker jobs for one balancer host on a shared executor, with at most
+ * a fixed number of them in flight at once. Each job runs its own steps in order,
+ * so a worker's form fetch always happens before its submit.
+ */
+public class WorkerPipeline {
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+
+    WorkerPipeline(Executor executor, int maxConcurrency) {
+        this.executor = executor;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+    }
+
+    /**
+     * Queues a job, blocking while the concurrency limit is reached.
+     */
+    public void submit(final Callable<Void> job) throws InterruptedException {
+        permits.acquire();
+        FutureTask<Void> task = new FutureTask<Void>(job) {
+            @Override
+            protected void done() {
+                permits.release();
+            }
+        };
+        tasks.add(task);
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for all submitted jobs to finish.
+     *
+     * @return The number of jobs that completed successfully
+     * @throws ExecutionException If one or more jobs failed. The cause is the first failure.
+     */
+    public int awaitAll() throws InterruptedException, ExecutionException {
+        int succeeded = 0;
+        ExecutionException firstFailure = null;
+        for (FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+                succeeded++;
+            } catch (ExecutionException e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw new ExecutionException((tasks.size() - succeeded) + " of " + tasks.size() + " workers failed",
+                    firstFailure.getCause());
+        }
+        return succeeded;
+    }
+}
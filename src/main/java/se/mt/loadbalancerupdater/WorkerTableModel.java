@@ -0,0 +1,273 @@
+package se.mt.loadbalancerupdater;
+
+import se.mt.loadbalancerupdater.metrics.TrafficHistory;
+import se.mt.loadbalancerupdater.metrics.TrafficSeries;
+import se.mt.loadbalancerupdater.parser.StatusPageParser;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One row per host, balancer and worker, grouped by host in the order the hosts are configured.
+ * Updating a host only fires events for the rows that actually changed, so the table does not
+ * have to repaint everything on each refresh.
+ * <p/>
+ * A host that has no workers to show yet, or that could not be read, is shown as a single row with a message.
+ * The traffic column holds the worker's TrafficSeries, for SparklineCellRenderer.
+ */
+public class WorkerTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMN_NAMES = {"Host", "Balancer", "Worker", "Status", "Route", "Factor", "Set", "Requests"};
+
+    public static final int STATUS_COLUMN = 3;
+    public static final int TRAFFIC_COLUMN = 7;
+
+    private final TrafficHistory trafficHistory = TrafficHistory.getDefault();
+
+    private final List<String> hosts;
+    private final List<Row> rows = new ArrayList<Row>();
+
+    public WorkerTableModel(List<String> hosts) {
+        this.hosts = new ArrayList<String>(hosts);
+        for (String host : hosts) {
+            rows.add(new Row(host, null, null, ""));
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == TRAFFIC_COLUMN ? TrafficSeries.class : Object.class;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Row row = rows.get(rowIndex);
+        switch (columnIndex) {
+            case 0:
+                return row.host;
+            case 1:
+                return row.balancer;
+            case 2:
+                return row.worker != null ? row.worker.getName() : null;
+            case STATUS_COLUMN:
+                return row.worker != null ? row.worker.getStatus() : row.message;
+            case 4:
+                return row.worker != null ? row.worker.getRoute() : null;
+            case 5:
+                return row.worker != null ? row.worker.getLoadFactor() : null;
+            case 6:
+                return row.worker != null ? row.worker.getLbSet() : null;
+            case TRAFFIC_COLUMN:
+                return row.worker != null ? trafficHistory.get(row.host, row.balancer, row.worker.getName()) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The worker on a row, or null if the row is a message
+     */
+    public Worker getWorker(int rowIndex) {
+        return rows.get(rowIndex).worker;
+    }
+
+    /**
+     * Replaces the rows of a host with its current workers.
+     */
+    public void setWorkers(String host, OrderedMultiMap<String, Worker> workers) {
+        List<Row> newRows = new ArrayList<Row>();
+        for (Map.Entry<String, Collection<Worker>> entry : workers.getMap().entrySet()) {
+            String balancer = StatusPageParser.getBalancerName(entry.getKey());
+            for (Worker worker : entry.getValue()) {
+                newRows.add(new Row(host, balancer, worker, null));
+            }
+        }
+        if (newRows.isEmpty()) {
+            newRows.add(new Row(host, null, null, "No matching balancers"));
+        }
+        replaceRows(host, newRows);
+    }
+
+    /**
+     * Updates only the rows of the changed workers. Falls back to replacing all rows of the host
+     * when workers were added or removed.
+     *
+     * @param workers All current workers of the host
+     */
+    public void updateWorkers(String host, List<WorkerChange> changes, OrderedMultiMap<String, Worker> workers) {
+        List<Integer> changedRows = new ArrayList<Integer>();
+        for (WorkerChange change : changes) {
+            int rowIndex = change.getOldWorker() != null && change.getNewWorker() != null
+                    ? findRow(host, StatusPageParser.getBalancerName(change.getBalancer()), change.getNewWorker().getName())
+                    : -1;
+            if (rowIndex < 0) {
+                setWorkers(host, workers);
+                return;
+            }
+            changedRows.add(rowIndex);
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            int rowIndex = changedRows.get(i);
+            Row row = rows.get(rowIndex);
+            rows.set(rowIndex, new Row(row.host, row.balancer, changes.get(i).getNewWorker(), null));
+            fireTableRowsUpdated(rowIndex, rowIndex);
+        }
+    }
+
+    /**
+     * Updates the row of one worker.
+     *
+     * @param balancer  The balancer heading, as the keys of PageGetter.getWorkers()
+     * @return          False if the worker has no row
+     */
+    public boolean updateWorker(String host, String balancer, Worker worker) {
+        int rowIndex = findRow(host, StatusPageParser.getBalancerName(balancer), worker.getName());
+        if (rowIndex < 0) {
+            return false;
+        }
+        Row row = rows.get(rowIndex);
+        rows.set(rowIndex, new Row(row.host, row.balancer, worker, null));
+        fireTableRowsUpdated(rowIndex, rowIndex);
+        return true;
+    }
+
+    /**
+     * Repaints the traffic column of a host, after its counters were sampled.
+     */
+    public void trafficUpdated(String host) {
+        int first = firstRowOf(host);
+        int last = first;
+        while (last + 1 < rows.size() && rows.get(last + 1).host.equals(host)) {
+            last++;
+        }
+        if (first < rows.size()) {
+            fireTableChanged(new TableModelEvent(this, first, last, TRAFFIC_COLUMN));
+        }
+    }
+
+    public boolean hasHost(String host) {
+        return hosts.contains(host);
+    }
+
+    /**
+     * Replaces the rows of a host with a message, such as an error or "Loading...".
+     */
+    public void setMessage(String host, String message) {
+        List<Row> newRows = new ArrayList<Row>();
+        newRows.add(new Row(host, null, null, message));
+        replaceRows(host, newRows);
+    }
+
+    private void replaceRows(String host, List<Row> newRows) {
+        int first = firstRowOf(host);
+        int count = 0;
+        while (first + count < rows.size() && rows.get(first + count).host.equals(host)) {
+            count++;
+        }
+
+        if (count == newRows.size() && sameWorkers(first, newRows)) {
+            // Same workers in the same order, only update the rows that changed
+            for (int i = 0; i < count; i++) {
+                Row oldRow = rows.get(first + i);
+                Row newRow = newRows.get(i);
+                rows.set(first + i, newRow);
+                if (!oldRow.sameValues(newRow)) {
+                    fireTableRowsUpdated(first + i, first + i);
+                }
+            }
+            return;
+        }
+
+        if (count > 0) {
+            rows.subList(first, first + count).clear();
+            fireTableRowsDeleted(first, first + count - 1);
+        }
+        rows.addAll(first, newRows);
+        fireTableRowsInserted(first, first + newRows.size() - 1);
+    }
+
+    private boolean sameWorkers(int first, List<Row> newRows) {
+        for (int i = 0; i < newRows.size(); i++) {
+            if (!rows.get(first + i).sameKey(newRows.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findRow(String host, String balancer, String workerName) {
+        for (int i = firstRowOf(host); i < rows.size() && rows.get(i).host.equals(host); i++) {
+            Row row = rows.get(i);
+            if (row.worker != null && row.balancer.equals(balancer) && row.worker.getName().equals(workerName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index where the rows of a host start, or should be inserted
+     */
+    private int firstRowOf(String host) {
+        int hostIndex = hosts.indexOf(host);
+        if (hostIndex < 0) {
+            throw new IllegalArgumentException("Unknown host " + host);
+        }
+        int i = 0;
+        while (i < rows.size() && hosts.indexOf(rows.get(i).host) < hostIndex) {
+            i++;
+        }
+        return i;
+    }
+
+    private static class Row {
+        private final String host;
+        private final String balancer;
+        private final Worker worker;
+        private final String message;
+
+        private Row(String host, String balancer, Worker worker, String message) {
+            this.host = host;
+            this.balancer = balancer;
+            this.worker = worker;
+            this.message = message;
+        }
+
+        boolean sameKey(Row other) {
+            return equal(balancer, other.balancer)
+                    && equal(worker != null ? worker.getName() : null, other.worker != null ? other.worker.getName() : null);
+        }
+
+        boolean sameValues(Row other) {
+            if (worker != null && other.worker != null) {
+                return sameKey(other) && worker.hasSameState(other.worker);
+            }
+            return sameKey(other)
+                    && equal(worker != null ? worker.getStatus() : message, other.worker != null ? other.worker.getStatus() : other.message);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package se.mt.loadbalancerupdater.exception;
+
+import java.io.IOException;
+
+/**
+ * Thrown when opening a change journal whose file another process is already writing.
+ */
+public class JournalLockedException extends IOException {
+
+    public JournalLockedException(String s) {
+        super(s);
+    }
+}
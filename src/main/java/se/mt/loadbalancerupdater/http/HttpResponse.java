@@ -0,0 +1,77 @@
+package se.mt.loadbalancerupdater.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fully read HTTP response. The body is already decompressed.
+ */
+public class HttpResponse {
+
+    private static final String DEFAULT_CHARSET = "ISO-8859-1";
+
+    private final URL url;
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    HttpResponse(URL url, int statusCode, Map<String, List<String>> headers, byte[] body) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return The first value of a header, or null. The name is case insensitive.
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return The charset from the Content-Type header, or ISO-8859-1 which is the HTTP default
+     */
+    public String getCharset() {
+        String contentType = getHeader("Content-Type");
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                param = param.trim();
+                if (param.toLowerCase().startsWith("charset=")) {
+                    return param.substring("charset=".length()).replace("\"", "").trim();
+                }
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    public Reader getBodyReader() throws UnsupportedEncodingException {
+        return new InputStreamReader(new ByteArrayInputStream(body), getCharset());
+    }
+
+    public String getBodyAsString() throws UnsupportedEncodingException {
+        return new String(body, getCharset());
+    }
+}
@@ -0,0 +1,284 @@
+package se.mt.loadbalancerupdater.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.Settings;
+import se.mt.loadbalancerupdater.metrics.Metrics;
+import se.mt.loadbalancerupdater.metrics.Phase;
+import se.mt.loadbalancerupdater.metrics.PhaseTimer;
+import se.mt.loadbalancerupdater.util.QueryStrings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The HTTP client used for all communication with the balancers.
+ * <p/>
+ * Connections are kept alive and reused by the JDK's keep-alive cache, which only happens when
+ * each response is read to the end and closed, so this class always does that. It also sets
+ * connect/read timeouts so that a hung balancer can't block forever, asks for gzip, and limits
+ * the number of concurrent connections to each host.
+ * The DNS lookup, connect and download of each request are timed in Metrics.
+ */
+public class HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpTransport.class);
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_READ_TIMEOUT = 15000;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+    // The JDK's own default for http.maxConnections
+    private static final int DEFAULT_JDK_MAX_CONNECTIONS = 5;
+
+    private static HttpTransport defaultTransport;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxConnectionsPerHost;
+    private final Metrics metrics = Metrics.getDefault();
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    public HttpTransport(int connectTimeout, int readTimeout, int maxConnectionsPerHost) {
+        LOGGER.info("Creating HttpTransport: connectTimeout = {}, readTimeout = {}, maxConnectionsPerHost = {}",
+                new Object[]{connectTimeout, readTimeout, maxConnectionsPerHost});
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+
+        // The JDK keeps up to http.maxConnections idle connections per host, raise it if we may open more than that.
+        // It is read once, so this only helps if no HttpURLConnection was used before the first transport.
+        if (System.getProperty("http.maxConnections") == null && this.maxConnectionsPerHost > DEFAULT_JDK_MAX_CONNECTIONS) {
+            System.setProperty("http.maxConnections", String.valueOf(this.maxConnectionsPerHost));
+        }
+    }
+
+    /**
+     * @return The transport shared by everything in the application, configured from Settings
+     */
+    public static synchronized HttpTransport getDefault() {
+        if (defaultTransport == null) {
+            defaultTransport = new HttpTransport(
+                    Settings.getInt(Settings.HTTP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT),
+                    Settings.getInt(Settings.HTTP_READ_TIMEOUT, DEFAULT_READ_TIMEOUT),
+                    Settings.getInt(Settings.HTTP_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        }
+        return defaultTransport;
+    }
+
+    public HttpResponse get(String urlString) throws IOException {
+        URL url = new URL(urlString);
+        Semaphore permits = acquire(url);
+        try {
+            HttpURLConnection connection = openConnection(url);
+            connect(url, connection);
+            PhaseTimer timer = startTimer(Phase.DOWNLOAD, url);
+            try {
+                HttpResponse response = readResponse(url, connection);
+                timer.success();
+                return response;
+            } finally {
+                timer.stop();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends a GET and reads the response without keeping it, for requests where only the status matters.
+     *
+     * @return The HTTP status code
+     */
+    public int getAndDiscard(String urlString) throws IOException {
+        URL url = new URL(urlString);
+        Semaphore permits = acquire(url);
+        try {
+            HttpURLConnection connection = openConnection(url);
+            connect(url, connection);
+            PhaseTimer timer = startTimer(Phase.DOWNLOAD, url);
+            try {
+                int statusCode = discardResponse(url, connection);
+                timer.success();
+                return statusCode;
+            } finally {
+                timer.stop();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends a POST and reads the response without keeping it.
+     *
+     * @param headers   Extra request headers, may be empty
+     * @return          The HTTP status code
+     */
+    public int postAndDiscard(String urlString, String contentType, byte[] body, Map<String, String> headers)
+            throws IOException {
+        URL url = new URL(urlString);
+        Semaphore permits = acquire(url);
+        try {
+            HttpURLConnection connection = openConnection(url);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", contentType);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            connect(url, connection);
+            PhaseTimer timer = startTimer(Phase.DOWNLOAD, url);
+            try {
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
+                int statusCode = discardResponse(url, connection);
+                timer.success();
+                return statusCode;
+            } finally {
+                timer.stop();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private HttpURLConnection openConnection(URL url) throws IOException {
+        URLConnection urlConnection = url.openConnection();
+        if (!(urlConnection instanceof HttpURLConnection)) {
+            throw new IOException("Not an HTTP URL: " + url);
+        }
+        HttpURLConnection connection = (HttpURLConnection) urlConnection;
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setRequestProperty("Connection", "keep-alive");
+        return connection;
+    }
+
+    /**
+     * Resolves the host and opens the connection as separate steps, so that both can be timed.
+     * The resolved address is cached by the JDK, so the URL connection doesn't look it up again.
+     */
+    private void connect(URL url, HttpURLConnection connection) throws IOException {
+        PhaseTimer timer = startTimer(Phase.DNS, url);
+        try {
+            InetAddress.getByName(url.getHost());
+            timer.success();
+        } finally {
+            timer.stop();
+        }
+        timer = startTimer(Phase.CONNECT, url);
+        try {
+            connection.connect();
+            timer.success();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Requests about one balancer, e.g. submits, are tagged with it, others with Metrics.ALL_BALANCERS.
+     */
+    private PhaseTimer startTimer(Phase phase, URL url) {
+        String query = url.getQuery();
+        String balancer = query != null ? QueryStrings.parse(url.toString()).get("b") : null;
+        return metrics.start(phase, url.getAuthority(), balancer);
+    }
+
+    private HttpResponse readResponse(URL url, HttpURLConnection connection) throws IOException {
+        int statusCode = connection.getResponseCode();
+        if (statusCode >= 400) {
+            // Drain the error body as well, otherwise the connection can't be reused
+            readFully(connection.getErrorStream(), null);
+            throw new IOException("HTTP " + statusCode + " " + connection.getResponseMessage() + " from " + url);
+        }
+        byte[] body = readFully(connection.getInputStream(), connection.getContentEncoding());
+        return new HttpResponse(url, statusCode, connection.getHeaderFields(), body);
+    }
+
+    private int discardResponse(URL url, HttpURLConnection connection) throws IOException {
+        int statusCode = connection.getResponseCode();
+        if (statusCode >= 400) {
+            drain(connection.getErrorStream());
+            throw new IOException("HTTP " + statusCode + " " + connection.getResponseMessage() + " from " + url);
+        }
+        drain(connection.getInputStream());
+        return statusCode;
+    }
+
+    /**
+     * Reads a stream to the end without keeping or decompressing anything, so that the connection can be reused.
+     */
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+                // Discard
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in, String contentEncoding) throws IOException {
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            if ("gzip".equalsIgnoreCase(contentEncoding)) {
+                in = new GZIPInputStream(in);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private Semaphore acquire(URL url) throws IOException {
+        String key = url.getHost() + ":" + url.getPort();
+        Semaphore permits = hostPermits.get(key);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(maxConnectionsPerHost);
+            permits = hostPermits.putIfAbsent(key, newPermits);
+            if (permits == null) {
+                permits = newPermits;
+            }
+        }
+        try {
+            if (!permits.tryAcquire(connectTimeout + readTimeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a free connection to " + url.getHost());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + url.getHost());
+        }
+        return permits;
+    }
+}
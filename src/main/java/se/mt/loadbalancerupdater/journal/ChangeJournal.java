@@ -0,0 +1,261 @@
+package se.mt.loadbalancerupdater.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.Settings;
+import se.mt.loadbalancerupdater.exception.JournalLockedException;
+import se.mt.loadbalancerupdater.util.NamedThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of every change made to the balancers, for finding out afterwards who did what, when.
+ * <p/>
+ * record() only puts the record on a queue, so it adds nothing noticeable to the time of a submit. A single
+ * writer thread takes everything that is queued, copies it into a memory-mapped region of the file and forces
+ * the region to disk once for the whole batch. The file is mapped a region at a time and grows as needed.
+ * Only one process may write a journal file at a time, which is enforced with a lock on a ".lock" file next to it.
+ * See JournalRecord for the format, and JournalReader for reading it.
+ */
+public class ChangeJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeJournal.class);
+
+    static final int MAGIC = 0x4c424a31;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+
+    private static final int REGION_SIZE = 1 << 20;
+    private static final int MAX_BATCH = 1000;
+
+    private static ChangeJournal defaultJournal;
+    private static boolean defaultOpened;
+
+    private final File file;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final BlockingQueue<JournalRecord> queue = new LinkedBlockingQueue<JournalRecord>();
+    private final Thread writer;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private volatile boolean closed;
+
+    /**
+     * @throws JournalLockedException If another process is writing the file
+     */
+    public ChangeJournal(File file) throws IOException {
+        this.file = file;
+        lockFile = new RandomAccessFile(getLockFile(file), "rw");
+        lock = tryLock(lockFile.getChannel());
+        if (lock == null) {
+            lockFile.close();
+            throw new JournalLockedException("Journal " + file + " is being written by another process");
+        }
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+        } catch (IOException e) {
+            releaseLock();
+            throw e;
+        }
+        channel = randomAccessFile.getChannel();
+        long end;
+        try {
+            end = findEnd();
+            mapRegion(end);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            releaseLock();
+            throw e;
+        }
+        LOGGER.info("Journaling changes to {}, {} bytes so far", file, end);
+
+        writer = new NamedThreadFactory("change-journal").newThread(new Runnable() {
+            @Override
+            public void run() {
+                writeBatches();
+            }
+        });
+        writer.start();
+    }
+
+    /**
+     * @return The journal shared by everything in the application, or null if journaling is turned off
+     *         or the file can't be opened. It is closed when the JVM exits.
+     */
+    public static synchronized ChangeJournal getDefault() {
+        if (!defaultOpened) {
+            defaultOpened = true;
+            if (Settings.getInt(Settings.JOURNAL, 1) != 0) {
+                try {
+                    defaultJournal = openDefault();
+                    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            defaultJournal.close();
+                        }
+                    }, "change-journal-close"));
+                } catch (IOException e) {
+                    LOGGER.warn("Could not open the change journal, changes will not be journaled", e);
+                }
+            }
+        }
+        return defaultJournal;
+    }
+
+    /**
+     * Opens the default file, or a file of this process next to it if another process is writing the default one,
+     * for example the GUI while a deploy script runs.
+     */
+    private static ChangeJournal openDefault() throws IOException {
+        File file = getDefaultFile();
+        try {
+            return new ChangeJournal(file);
+        } catch (JournalLockedException e) {
+            String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+            File processFile = new File(file.getPath() + "." + pid);
+            LOGGER.warn("{}, journaling the changes of this process to {} instead", e.getMessage(), processFile);
+            return new ChangeJournal(processFile);
+        }
+    }
+
+    /**
+     * @return The file named by -Dlbupdater.journal.file, or loadbalancerupdater.journal in the home directory
+     */
+    public static File getDefaultFile() {
+        return new File(Settings.getString(Settings.JOURNAL_FILE,
+                System.getProperty("user.home") + File.separator + "loadbalancerupdater.journal"));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Queues a record for writing. Never blocks.
+     */
+    public void record(JournalRecord record) {
+        if (closed) {
+            LOGGER.warn("Journal is closed, dropping {}", record);
+            return;
+        }
+        queue.offer(record);
+    }
+
+    /**
+     * Writes what is queued and closes the file.
+     */
+    public void close() {
+        closed = true;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close journal " + file, e);
+        }
+        releaseLock();
+    }
+
+    private static File getLockFile(File file) {
+        return new File(file.getPath() + ".lock");
+    }
+
+    private static FileLock tryLock(FileChannel lockChannel) throws IOException {
+        try {
+            return lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another ChangeJournal in this JVM
+            return null;
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            lock.release();
+            lockFile.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not release the lock of journal " + file, e);
+        }
+    }
+
+    private void writeBatches() {
+        List<JournalRecord> batch = new ArrayList<JournalRecord>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                JournalRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (JournalRecord record : batch) {
+                    write(record.encode());
+                }
+                region.force();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                LOGGER.error("Could not write " + batch.size() + " records to journal " + file, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(byte[] encoded) throws IOException {
+        if (encoded.length > REGION_SIZE) {
+            throw new IOException("Record of " + encoded.length + " bytes does not fit in a region");
+        }
+        // Leave room for a zero length after the record, which marks the end
+        if (region.remaining() < encoded.length + 4) {
+            region.force();
+            mapRegion(regionStart + region.position());
+        }
+        int position = region.position();
+        // Write the length last, so that a record is not seen until it is complete
+        region.position(position + 4);
+        region.put(encoded, 4, encoded.length - 4);
+        region.putInt(position, ByteBuffer.wrap(encoded).getInt(0));
+    }
+
+    private void mapRegion(long start) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+        regionStart = start;
+    }
+
+    /**
+     * Writes the file header of a new file, or checks it and skips the records of an existing one.
+     *
+     * @return The file position after the last intact record
+     */
+    private long findEnd() throws IOException {
+        if (channel.size() < FILE_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.write(header, 0);
+            return FILE_HEADER_SIZE;
+        }
+        JournalReader reader = new JournalReader(channel);
+        return reader.findEnd();
+    }
+}
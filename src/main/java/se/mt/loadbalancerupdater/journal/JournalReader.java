@@ -0,0 +1,215 @@
+package se.mt.loadbalancerupdater.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Reads a ChangeJournal file through a read-only memory mapping, so that only the pages that are looked at are
+ * read from disk. Records outside the time range are skipped by their length without being checked or decoded,
+ * and reading stops once the timestamps are well past the end of the range.
+ * <p/>
+ * As a command line tool it prints the matching records as tab separated lines:
+ * <pre>
+ * java -cp load-balancer-updater.jar se.mt.loadbalancerupdater.journal.JournalReader
+ *     [--file f] [--host h] [--balancer b] [--worker w] [--from 2012-05-01T10:00] [--to 2012-05-01T12:00]
+ * </pre>
+ * Host, balancer and worker match if they contain the given text.
+ */
+public class JournalReader {
+
+    private static final String[] DATE_FORMATS = {"yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd"};
+    private static final String OUTPUT_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+    // Records are written in about the order they were made, a batch can be this much out of order
+    private static final long MAX_DISORDER_MILLIS = 60000;
+
+    private final FileChannel channel;
+
+    private String host;
+    private String balancer;
+    private String worker;
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+
+    public JournalReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public interface RecordHandler {
+        void record(JournalRecord record);
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public void setBalancer(String balancer) {
+        this.balancer = balancer;
+    }
+
+    public void setWorker(String worker) {
+        this.worker = worker;
+    }
+
+    /**
+     * @param from  First timestamp to include, in milliseconds
+     * @param to    Last timestamp to include, in milliseconds
+     */
+    public void setTimeRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Calls the handler for each record that matches the filters, in the order they were written.
+     *
+     * @return The number of matching records
+     */
+    public int read(RecordHandler handler) throws IOException {
+        ByteBuffer buffer = map();
+        int count = 0;
+        int size;
+        while ((size = JournalRecord.peekSize(buffer)) > 0) {
+            int next = buffer.position() + size;
+            long timestamp = JournalRecord.peekTimestamp(buffer);
+            if (to < Long.MAX_VALUE - MAX_DISORDER_MILLIS && timestamp > to + MAX_DISORDER_MILLIS) {
+                break;
+            }
+            if (timestamp >= from && timestamp <= to) {
+                if (JournalRecord.validate(buffer) == 0) {
+                    // Damaged, and so is everything after it as far as we know
+                    break;
+                }
+                JournalRecord record = JournalRecord.decode(buffer);
+                if (matches(record.getHost(), host) && matches(record.getBalancer(), balancer)
+                        && matches(record.getWorker(), worker)) {
+                    handler.record(record);
+                    count++;
+                }
+            }
+            buffer.position(next);
+        }
+        return count;
+    }
+
+    /**
+     * @return The file position after the last intact record
+     */
+    long findEnd() throws IOException {
+        ByteBuffer buffer = map();
+        int size;
+        while ((size = JournalRecord.validate(buffer)) > 0) {
+            buffer.position(buffer.position() + size);
+        }
+        return buffer.position();
+    }
+
+    private ByteBuffer map() throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal is larger than 2 GB, start a new one with -Dlbupdater.journal.file");
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < ChangeJournal.FILE_HEADER_SIZE || buffer.getInt(0) != ChangeJournal.MAGIC) {
+            throw new IOException("Not a change journal");
+        }
+        if (buffer.getInt(4) != ChangeJournal.VERSION) {
+            throw new IOException("Unknown journal version " + buffer.getInt(4));
+        }
+        buffer.position(ChangeJournal.FILE_HEADER_SIZE);
+        return buffer;
+    }
+
+    private static boolean matches(String value, String filter) {
+        return filter == null || value.contains(filter);
+    }
+
+    public static void main(String[] args) {
+        File file = ChangeJournal.getDefaultFile();
+        String host = null;
+        String balancer = null;
+        String worker = null;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    usage();
+                    return;
+                }
+                String value = args[i + 1];
+                if (args[i].equals("--file")) {
+                    file = new File(value);
+                } else if (args[i].equals("--host")) {
+                    host = value;
+                } else if (args[i].equals("--balancer")) {
+                    balancer = value;
+                } else if (args[i].equals("--worker")) {
+                    worker = value;
+                } else if (args[i].equals("--from")) {
+                    from = parseDate(value);
+                } else if (args[i].equals("--to")) {
+                    to = parseDate(value);
+                } else {
+                    usage();
+                    return;
+                }
+            }
+        } catch (ParseException e) {
+            System.err.println("Bad date: " + e.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                JournalReader reader = new JournalReader(randomAccessFile.getChannel());
+                reader.setHost(host);
+                reader.setBalancer(balancer);
+                reader.setWorker(worker);
+                reader.setTimeRange(from, to);
+                final PrintStream out = System.out;
+                final SimpleDateFormat dateFormat = new SimpleDateFormat(OUTPUT_DATE_FORMAT);
+                reader.read(new RecordHandler() {
+                    @Override
+                    public void record(JournalRecord record) {
+                        out.println(dateFormat.format(new Date(record.getTimestamp())) + "\t" + record.getUser()
+                                + "\t" + record.getHost() + "\t" + record.getBalancer() + "\t" + record.getWorker()
+                                + "\t" + record.getAction() + "\t" + record.getResult());
+                    }
+                });
+                out.flush();
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + file + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static long parseDate(String value) throws ParseException {
+        for (String format : DATE_FORMATS) {
+            try {
+                SimpleDateFormat dateFormat = new SimpleDateFormat(format);
+                dateFormat.setLenient(false);
+                return dateFormat.parse(value).getTime();
+            } catch (ParseException e) {
+                // Try the next format
+            }
+        }
+        throw new ParseException(value, 0);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: JournalReader [--file f] [--host h] [--balancer b] [--worker w] "
+                + "[--from yyyy-MM-dd'T'HH:mm] [--to yyyy-MM-dd'T'HH:mm]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,192 @@
+package se.mt.loadbalancerupdater.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * One change, or one verification of a change, of a worker on a balancer.
+ * <p/>
+ * On disk a record is: int length of the body, int CRC32 of the body, and the body: long timestamp followed by
+ * user, host, balancer, worker, action and result, each as an unsigned short byte count and UTF-8 bytes.
+ * A length of zero marks the end of the journal.
+ */
+public class JournalRecord {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int HEADER_SIZE = 8;
+    private static final int MAX_STRING_BYTES = 0xffff;
+
+    private final long timestamp;
+    private final String user;
+    private final String host;
+    private final String balancer;
+    private final String worker;
+    private final String action;
+    private final String result;
+
+    public JournalRecord(long timestamp, String user, String host, String balancer, String worker,
+                         String action, String result) {
+        this.timestamp = timestamp;
+        this.user = nullToEmpty(user);
+        this.host = nullToEmpty(host);
+        this.balancer = nullToEmpty(balancer);
+        this.worker = nullToEmpty(worker);
+        this.action = nullToEmpty(action);
+        this.result = nullToEmpty(result);
+    }
+
+    /**
+     * A record by the current user, now.
+     */
+    public JournalRecord(String host, String balancer, String worker, String action, String result) {
+        this(System.currentTimeMillis(), System.getProperty("user.name"), host, balancer, worker, action, result);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getBalancer() {
+        return balancer;
+    }
+
+    public String getWorker() {
+        return worker;
+    }
+
+    /**
+     * @return What was done, e.g. "dw=Disable" or "verify disabled"
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @return How it went, e.g. "OK", "FAILED: ..." or "CONFIRMED"
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return The record encoded with its length and checksum
+     */
+    byte[] encode() {
+        byte[][] strings = {bytes(user), bytes(host), bytes(balancer), bytes(worker), bytes(action), bytes(result)};
+        int bodyLength = 8;
+        for (byte[] string : strings) {
+            bodyLength += 2 + string.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        buffer.position(HEADER_SIZE);
+        buffer.putLong(timestamp);
+        for (byte[] string : strings) {
+            buffer.putShort((short) string.length);
+            buffer.put(string);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, bodyLength);
+        buffer.putInt(0, bodyLength);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Checks the record at the position of the buffer without moving it.
+     *
+     * @return The size of the record including its header, or 0 if there is no complete, intact record there
+     */
+    static int validate(ByteBuffer buffer) {
+        int size = peekSize(buffer);
+        if (size == 0) {
+            return 0;
+        }
+        int position = buffer.position();
+        int bodyLength = size - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + position + HEADER_SIZE, bodyLength);
+        } else {
+            byte[] body = new byte[bodyLength];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(position + HEADER_SIZE);
+            duplicate.get(body);
+            crc.update(body);
+        }
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? HEADER_SIZE + bodyLength : 0;
+    }
+
+    /**
+     * Reads the length of the record at the position of the buffer, without checking its CRC.
+     *
+     * @return The size of the record including its header, or 0 if there is no complete record there
+     */
+    static int peekSize(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return 0;
+        }
+        int bodyLength = buffer.getInt(buffer.position());
+        // The body starts with the timestamp
+        if (bodyLength < 8 || bodyLength > buffer.remaining() - HEADER_SIZE) {
+            return 0;
+        }
+        return HEADER_SIZE + bodyLength;
+    }
+
+    /**
+     * @return The timestamp of the record at the position of the buffer, without decoding the rest
+     */
+    static long peekTimestamp(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + HEADER_SIZE);
+    }
+
+    /**
+     * Decodes the valid record at the position of the buffer, and moves past it.
+     */
+    static JournalRecord decode(ByteBuffer buffer) {
+        buffer.position(buffer.position() + HEADER_SIZE);
+        long timestamp = buffer.getLong();
+        String user = readString(buffer);
+        String host = readString(buffer);
+        String balancer = readString(buffer);
+        String worker = readString(buffer);
+        String action = readString(buffer);
+        String result = readString(buffer);
+        return new JournalRecord(timestamp, user, host, balancer, worker, action, result);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static byte[] bytes(String s) {
+        byte[] bytes = s.getBytes(UTF8);
+        if (bytes.length <= MAX_STRING_BYTES) {
+            return bytes;
+        }
+        byte[] truncated = new byte[MAX_STRING_BYTES];
+        System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_BYTES);
+        return truncated;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s != null ? s : "";
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + "\t" + user + "\t" + host + "\t" + balancer + "\t" + worker + "\t" + action + "\t" + result;
+    }
+}
@@ -0,0 +1,99 @@
+package se.mt.loadbalancerupdater.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.mt.loadbalancerupdater.Settings;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Timings of each phase of talking to the balancers, kept per host, balancer and phase.
+ * <p/>
+ * Each combination is registered as an MBean named like
+ * se.mt.loadbalancerupdater:type=PhaseStats,host="lb1:80",balancer=mycluster,phase=SUBMIT
+ * so it can be watched in JConsole or VisualVM. Every timed phase is also logged at debug level to the
+ * se.mt.loadbalancerupdater.metrics.events logger, as a record of a session that can be gone through afterwards.
+ * Phases that are not about one balancer, like fetching the status page, use the balancer "*".
+ */
+public class Metrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+    private static final Logger EVENT_LOGGER = LoggerFactory.getLogger("se.mt.loadbalancerupdater.metrics.events");
+
+    public static final String ALL_BALANCERS = "*";
+
+    private static final String DOMAIN = "se.mt.loadbalancerupdater";
+
+    private static final Metrics DEFAULT = new Metrics(Settings.getInt(Settings.METRICS_JMX, 1) != 0);
+
+    private final boolean registerMBeans;
+    private final ConcurrentMap<String, PhaseStats> stats = new ConcurrentHashMap<String, PhaseStats>();
+
+    public Metrics(boolean registerMBeans) {
+        this.registerMBeans = registerMBeans;
+    }
+
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param balancer  The balancer name, or null for ALL_BALANCERS
+     */
+    public PhaseTimer start(Phase phase, String host, String balancer) {
+        return new PhaseTimer(this, phase, host, balancer != null ? balancer : ALL_BALANCERS);
+    }
+
+    /**
+     * @return The stats of all combinations timed so far
+     */
+    public List<PhaseStats> getStats() {
+        return new ArrayList<PhaseStats>(stats.values());
+    }
+
+    void record(Phase phase, String host, String balancer, long nanos, boolean failed) {
+        getStats(phase, host, balancer).record(nanos, failed);
+        if (EVENT_LOGGER.isDebugEnabled()) {
+            EVENT_LOGGER.debug("{}\t{}\t{}\t{}\t{}",
+                    new Object[]{phase, host, balancer, nanos / 1000, failed ? "ERROR" : "OK"});
+        }
+    }
+
+    private PhaseStats getStats(Phase phase, String host, String balancer) {
+        String key = host + '\u0000' + balancer + '\u0000' + phase;
+        PhaseStats phaseStats = stats.get(key);
+        if (phaseStats == null) {
+            phaseStats = new PhaseStats(host, balancer, phase);
+            PhaseStats existing = stats.putIfAbsent(key, phaseStats);
+            if (existing != null) {
+                return existing;
+            }
+            if (registerMBeans) {
+                register(phaseStats);
+            }
+        }
+        return phaseStats;
+    }
+
+    private void register(PhaseStats phaseStats) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=PhaseStats"
+                    + ",host=" + ObjectName.quote(phaseStats.getHost())
+                    + ",balancer=" + ObjectName.quote(phaseStats.getBalancer())
+                    + ",phase=" + phaseStats.getPhase());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(phaseStats, name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Could not register metrics for {} in JMX: {}", phaseStats.getHost(), e.getMessage());
+        }
+    }
+}
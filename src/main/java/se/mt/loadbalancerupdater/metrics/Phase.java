@@ -0,0 +1,19 @@
+package se.mt.loadbalancerupdater.metrics;
+
+/**
+ * The steps of talking to a balancer-manager that are timed separately.
+ */
+public enum Phase {
+    // Looking up the balancer host's address
+    DNS,
+    // Opening the TCP connection, close to zero when a kept-alive connection is reused
+    CONNECT,
+    // From sending the request until the whole response is read, so it includes the server's time
+    DOWNLOAD,
+    // Turning a status page into workers
+    PARSE,
+    // Fetching and parsing a worker's edit page, when its link lacks the submit fields
+    FORM_FETCH,
+    // Sending a change for one worker
+    SUBMIT
+}
@@ -0,0 +1,84 @@
+package se.mt.loadbalancerupdater.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and error count of one phase against one host and balancer.
+ */
+public class PhaseStats implements PhaseStatsMBean {
+
+    private final String host;
+    private final String balancer;
+    private final Phase phase;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    PhaseStats(String host, String balancer, Phase phase) {
+        this.host = host;
+        this.balancer = balancer;
+        this.phase = phase;
+    }
+
+    void record(long nanos, boolean failed) {
+        histogram.record(nanos);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String getHost() {
+        return host;
+    }
+
+    @Override
+    public String getBalancer() {
+        return balancer;
+    }
+
+    @Override
+    public String getPhase() {
+        return phase.name();
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return histogram.getMeanMillis();
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return histogram.getMaxMillis();
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return histogram.getPercentileMillis(0.5);
+    }
+
+    @Override
+    public double get95thPercentileMillis() {
+        return histogram.getPercentileMillis(0.95);
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return histogram.getPercentileMillis(0.99);
+    }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+        errors.set(0);
+    }
+}
@@ -0,0 +1,29 @@
+package se.mt.loadbalancerupdater.metrics;
+
+/**
+ * The JMX view of the timings of one phase against one host and balancer.
+ */
+public interface PhaseStatsMBean {
+
+    String getHost();
+
+    String getBalancer();
+
+    String getPhase();
+
+    long getCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getMedianMillis();
+
+    double get95thPercentileMillis();
+
+    double get99thPercentileMillis();
+
+    void reset();
+}
@@ -0,0 +1,34 @@
+package se.mt.loadbalancerupdater.metrics;
+
+/**
+ * Times one phase. Call success() when the phase went well and stop() in a finally block;
+ * a timer that is stopped without success() is counted as an error.
+ */
+public class PhaseTimer {
+
+    private final Metrics metrics;
+    private final Phase phase;
+    private final String host;
+    private final String balancer;
+    private final long start = System.nanoTime();
+    private boolean succeeded;
+    private boolean stopped;
+
+    PhaseTimer(Metrics metrics, Phase phase, String host, String balancer) {
+        this.metrics = metrics;
+        this.phase = phase;
+        this.host = host;
+        this.balancer = balancer;
+    }
+
+    public void success() {
+        succeeded = true;
+    }
+
+    public void stop() {
+        if (!stopped) {
+            stopped = true;
+            metrics.record(phase, host, balancer, System.nanoTime() - start, !succeeded);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package se.mt.loadbalancerupdater.metrics;
+
+/**
+ * The cumulative traffic counters of a worker on the balancer-manager page.
+ */
+public enum TrafficCounter {
+    /**
+     * Requests sent to the worker
+     */
+    ELECTED,
+    /**
+     * Bytes sent to the worker
+     */
+    TO,
+    /**
+     * Bytes read from the worker
+     */
+    FROM
+}
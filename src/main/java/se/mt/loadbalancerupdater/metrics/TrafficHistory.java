@@ -0,0 +1,56 @@
+package se.mt.loadbalancerupdater.metrics;
+
+import se.mt.loadbalancerupdater.Settings;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The TrafficSeries of every sampled worker, by host, balancer and worker name.
+ * Each series has a fixed number of samples, so memory only grows with the number of workers.
+ */
+public class TrafficHistory {
+
+    private static final int DEFAULT_SAMPLES = 60;
+
+    private static final TrafficHistory DEFAULT = new TrafficHistory(Settings.getInt(Settings.TRAFFIC_SAMPLES, DEFAULT_SAMPLES));
+
+    private final int samples;
+    private final ConcurrentMap<String, TrafficSeries> series = new ConcurrentHashMap<String, TrafficSeries>();
+
+    public TrafficHistory(int samples) {
+        this.samples = samples;
+    }
+
+    public static TrafficHistory getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param balancer  The balancer name, e.g. "balancer://mycluster"
+     * @param counters  The values of the counters, indexed by TrafficCounter ordinal
+     */
+    public void record(String host, String balancer, String worker, long time, long[] counters) {
+        String key = getKey(host, balancer, worker);
+        TrafficSeries workerSeries = series.get(key);
+        if (workerSeries == null) {
+            workerSeries = new TrafficSeries(samples);
+            TrafficSeries existing = series.putIfAbsent(key, workerSeries);
+            if (existing != null) {
+                workerSeries = existing;
+            }
+        }
+        workerSeries.add(time, counters);
+    }
+
+    /**
+     * @return The samples of the worker, or null if it has not been sampled
+     */
+    public TrafficSeries get(String host, String balancer, String worker) {
+        return series.get(getKey(host, balancer, worker));
+    }
+
+    private static String getKey(String host, String balancer, String worker) {
+        return host + '\u0000' + balancer + '\u0000' + worker;
+    }
+}
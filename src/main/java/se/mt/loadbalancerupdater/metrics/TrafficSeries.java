@@ -0,0 +1,97 @@
+package se.mt.loadbalancerupdater.metrics;
+
+/**
+ * The last samples of one worker's traffic counters, in fixed size ring buffers of primitives, so that
+ * thousands of workers can be tracked without boxing or memory that grows over time.
+ * Rates are derived from the difference between consecutive samples.
+ */
+public class TrafficSeries {
+
+    private final long[] times;
+    private final long[][] values;
+    // Where the next sample goes, and the number of samples kept
+    private int next;
+    private int size;
+
+    /**
+     * @param capacity  The number of samples kept, the oldest one is overwritten when full
+     */
+    public TrafficSeries(int capacity) {
+        times = new long[Math.max(2, capacity)];
+        values = new long[TrafficCounter.values().length][times.length];
+    }
+
+    /**
+     * @param time  Milliseconds, samples must be added in time order
+     * @param counters  The values of the counters, indexed by TrafficCounter ordinal
+     */
+    public synchronized void add(long time, long[] counters) {
+        if (size > 0 && time <= times[index(size - 1)]) {
+            return;
+        }
+        times[next] = time;
+        for (int i = 0; i < values.length; i++) {
+            values[i][next] = counters[i];
+        }
+        next = (next + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    /**
+     * Fills the array with the per second rates between consecutive samples, oldest first.
+     * A counter that went down, i.e. Apache was restarted, is taken to have started from 0.
+     *
+     * @param rates Room for at least getCapacity() - 1 rates
+     * @return      The number of rates filled in, one less than the number of samples
+     */
+    public synchronized int getRates(TrafficCounter counter, double[] rates) {
+        long[] counterValues = values[counter.ordinal()];
+        int count = Math.max(0, size - 1);
+        for (int i = 0; i < count; i++) {
+            int from = index(i);
+            int to = index(i + 1);
+            long delta = counterValues[to] - counterValues[from];
+            if (delta < 0) {
+                delta = counterValues[to];
+            }
+            rates[i] = delta * 1000.0 / (times[to] - times[from]);
+        }
+        return count;
+    }
+
+    /**
+     * @return The rate per second between the last two samples, or -1 if there are less than two
+     */
+    public synchronized double getLatestRate(TrafficCounter counter) {
+        if (size < 2) {
+            return -1;
+        }
+        long[] counterValues = values[counter.ordinal()];
+        int from = index(size - 2);
+        int to = index(size - 1);
+        long delta = counterValues[to] - counterValues[from];
+        return (delta < 0 ? counterValues[to] : delta) * 1000.0 / (times[to] - times[from]);
+    }
+
+    /**
+     * @return The time of the last sample, or 0 if there is none
+     */
+    public synchronized long getLatestTime() {
+        return size > 0 ? times[index(size - 1)] : 0;
+    }
+
+    /**
+     * @param i 0 for the oldest sample kept
+     */
+    private int index(int i) {
+        return (next - size + i + times.length) % times.length;
+    }
+}
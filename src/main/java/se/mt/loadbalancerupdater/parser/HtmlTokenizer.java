@@ -0,0 +1,346 @@
+package se.mt.loadbalancerupdater.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull tokenizer for HTML. It hands out start tags, end tags and text one at a time
+ * without building a document tree, so a whole page can be scanned in one pass with almost no garbage.
+ * Comments, doctypes and processing instructions are skipped, as is the content of script and style elements.
+ * <p/>
+ * It is not a validating parser, only good enough for machine generated pages such as the balancer-manager.
+ */
+public class HtmlTokenizer {
+
+    public enum Token {
+        START_TAG, END_TAG, TEXT, EOF
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private String tagName;
+    private final StringBuilder tagContent = new StringBuilder(128);
+    private final StringBuilder text = new StringBuilder(256);
+    private String skipUntilEndTag;
+
+    public HtmlTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Advances to the next token.
+     */
+    public Token next() throws IOException {
+        if (skipUntilEndTag != null) {
+            String name = skipUntilEndTag;
+            skipUntilEndTag = null;
+            skipRawContent(name);
+        }
+        while (true) {
+            int c = peek();
+            if (c < 0) {
+                return Token.EOF;
+            }
+            if (c != '<') {
+                text.setLength(0);
+                readText();
+                return Token.TEXT;
+            }
+            read();
+            int next = peek();
+            if (next == '!' || next == '?') {
+                skipMarkup();
+            } else if (next == '/') {
+                read();
+                tagName = readName();
+                skipPast('>');
+                return Token.END_TAG;
+            } else if (isNameStart(next)) {
+                tagName = readName();
+                readTagContent();
+                if (tagName.equals("script") || tagName.equals("style")) {
+                    skipUntilEndTag = tagName;
+                }
+                return Token.START_TAG;
+            } else {
+                // A lone '<', treat it as text
+                text.setLength(0);
+                text.append('<');
+                readText();
+                return Token.TEXT;
+            }
+        }
+    }
+
+    /**
+     * @return The lower case name of the current start or end tag
+     */
+    public String getTagName() {
+        return tagName;
+    }
+
+    /**
+     * @return The decoded value of an attribute of the current start tag, or null if it is not present
+     */
+    public String getAttribute(String name) {
+        int length = tagContent.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && isWhitespace(tagContent.charAt(i))) {
+                i++;
+            }
+            int nameStart = i;
+            while (i < length && tagContent.charAt(i) != '=' && !isWhitespace(tagContent.charAt(i))) {
+                i++;
+            }
+            if (i == nameStart) {
+                i++;
+                continue;
+            }
+            boolean matches = name.equalsIgnoreCase(tagContent.substring(nameStart, i));
+            while (i < length && isWhitespace(tagContent.charAt(i))) {
+                i++;
+            }
+            if (i >= length || tagContent.charAt(i) != '=') {
+                if (matches) {
+                    return "";
+                }
+                continue;
+            }
+            i++;
+            while (i < length && isWhitespace(tagContent.charAt(i))) {
+                i++;
+            }
+            int valueStart;
+            int valueEnd;
+            if (i < length && (tagContent.charAt(i) == '"' || tagContent.charAt(i) == '\'')) {
+                char quote = tagContent.charAt(i);
+                valueStart = i + 1;
+                valueEnd = tagContent.indexOf(String.valueOf(quote), valueStart);
+                if (valueEnd < 0) {
+                    valueEnd = length;
+                }
+                i = valueEnd + 1;
+            } else {
+                valueStart = i;
+                while (i < length && !isWhitespace(tagContent.charAt(i))) {
+                    i++;
+                }
+                valueEnd = i;
+            }
+            if (matches) {
+                return decodeEntities(tagContent.substring(valueStart, valueEnd));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The text of the current text token, with entities decoded
+     */
+    public String getText() {
+        return decodeEntities(text.toString());
+    }
+
+    /**
+     * Appends the text of the current text token to a builder, with entities decoded.
+     */
+    public void appendText(StringBuilder sb) {
+        if (text.indexOf("&") < 0) {
+            sb.append(text);
+        } else {
+            sb.append(getText());
+        }
+    }
+
+    private void readText() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return;
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '<') {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+            if (position < limit) {
+                return;
+            }
+        }
+    }
+
+    private String readName() throws IOException {
+        StringBuilder name = new StringBuilder(8);
+        int c;
+        while ((c = peek()) >= 0 && !isWhitespace((char) c) && c != '>' && c != '/') {
+            name.append(Character.toLowerCase((char) read()));
+        }
+        return name.toString();
+    }
+
+    private void readTagContent() throws IOException {
+        tagContent.setLength(0);
+        char quote = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+            tagContent.append((char) c);
+        }
+        // Drop the slash of self-closing tags
+        int end = tagContent.length() - 1;
+        if (end >= 0 && tagContent.charAt(end) == '/') {
+            tagContent.setLength(end);
+        }
+    }
+
+    private void skipMarkup() throws IOException {
+        read();
+        if (peek() == '-') {
+            read();
+            if (peek() == '-') {
+                read();
+                // A comment, skip until -->
+                int dashes = 0;
+                int c;
+                while ((c = read()) >= 0) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+        }
+        skipPast('>');
+    }
+
+    private void skipRawContent(String name) throws IOException {
+        String endTag = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (Character.toLowerCase((char) c) == endTag.charAt(matched)) {
+                if (++matched == endTag.length()) {
+                    skipPast('>');
+                    return;
+                }
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    private void skipPast(char end) throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != end) {
+            // Skip
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        int count = reader.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    private static boolean isNameStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Decodes the character entities that show up in generated pages: the XML ones, &amp;nbsp; and numeric references.
+     */
+    public static String decodeEntities(String s) {
+        int amp = s.indexOf('&');
+        if (amp < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        sb.append(s, 0, amp);
+        int i = amp;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            int semicolon;
+            if (c != '&' || (semicolon = s.indexOf(';', i)) < 0 || semicolon - i > 10) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            String entity = s.substring(i + 1, semicolon);
+            int decoded = decodeEntity(entity);
+            if (decoded < 0) {
+                sb.append(c);
+                i++;
+            } else {
+                sb.appendCodePoint(decoded);
+                i = semicolon + 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int decodeEntity(String entity) {
+        if (entity.equals("amp")) {
+            return '&';
+        } else if (entity.equals("lt")) {
+            return '<';
+        } else if (entity.equals("gt")) {
+            return '>';
+        } else if (entity.equals("quot")) {
+            return '"';
+        } else if (entity.equals("apos")) {
+            return '\'';
+        } else if (entity.equals("nbsp")) {
+            return ' ';
+        } else if (entity.startsWith("#")) {
+            int codePoint;
+            try {
+                if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                    codePoint = Integer.parseInt(entity.substring(2), 16);
+                } else {
+                    codePoint = Integer.parseInt(entity.substring(1));
+                }
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            // Out of range references are kept as written, like unknown names
+            return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,306 @@
+package se.mt.loadbalancerupdater.parser;
+
+import se.mt.loadbalancerupdater.Worker;
+import se.mt.loadbalancerupdater.util.AhoCorasick;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Extracts the workers of the configured balancers from a balancer-manager status page in a single pass.
+ * <p/>
+ * Each balancer on the page starts with a heading like
+ * &lt;h3&gt;LoadBalancer Status for balancer://mycluster&lt;/h3&gt; followed by two tables.
+ * The first one describes the balancer, the second one has a row with a link for each worker.
+ * The columns of the worker rows are looked up by their header, since they differ between Apache versions.
+ */
+public class StatusPageParser {
+
+    private static final String HEADING_PREFIX = "LoadBalancer Status for";
+
+    private static final String STATUS_HEADER = "Status";
+    private static final String ROUTE_HEADER = "Route";
+    private static final String REDIRECT_HEADER = "RouteRedir";
+    private static final String FACTOR_HEADER = "Factor";
+    private static final String SET_HEADER = "Set";
+    private static final String ELECTED_HEADER = "Elected";
+    private static final String BUSY_HEADER = "Busy";
+    private static final String TO_HEADER = "To";
+    private static final String FROM_HEADER = "From";
+
+    private enum State {
+        OUTSIDE, IN_HEADING, AFTER_HEADING, IN_WORKER_TABLE
+    }
+
+    private static final ConcurrentMap<List<String>, StatusPageParser> PARSERS =
+            new ConcurrentHashMap<List<String>, StatusPageParser>();
+
+    // Finds "://name" for all balancer names in one pass over a heading
+    private AhoCorasick balancerMatcher;
+
+    public StatusPageParser(List<String> balancerNames) {
+        List<String> patterns = new ArrayList<String>(balancerNames.size());
+        for (String balancerName : balancerNames) {
+            patterns.add("://" + balancerName);
+        }
+        this.balancerMatcher = new AhoCorasick(patterns);
+    }
+
+    /**
+     * @return A shared parser for the balancer names. Parsers are thread safe, so they are compiled once and reused.
+     */
+    public static StatusPageParser forBalancers(List<String> balancerNames) {
+        StatusPageParser parser = PARSERS.get(balancerNames);
+        if (parser == null) {
+            parser = new StatusPageParser(balancerNames);
+            StatusPageParser existing = PARSERS.putIfAbsent(new ArrayList<String>(balancerNames), parser);
+            if (existing != null) {
+                parser = existing;
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * @param reader    The status page
+     * @param baseUrl   The URL of the page, used to make worker links absolute
+     * @return          Balancer heading text mapped to its workers, in page order
+     */
+    public OrderedMultiMap<String, Worker> parse(Reader reader, URL baseUrl) throws IOException {
+        OrderedMultiMap<String, Worker> balancerToWorkerMap = new OrderedMultiMap<String, Worker>();
+
+        HtmlTokenizer tokenizer = new HtmlTokenizer(reader);
+        StringBuilder text = new StringBuilder(64);
+        State state = State.OUTSIDE;
+        String balancer = null;
+        int tableDepth = 0;
+        int tablesSeen = 0;
+        WorkerTable table = null;
+
+        HtmlTokenizer.Token token;
+        while ((token = tokenizer.next()) != HtmlTokenizer.Token.EOF) {
+            boolean isStart = token == HtmlTokenizer.Token.START_TAG;
+            boolean isEnd = token == HtmlTokenizer.Token.END_TAG;
+            String tagName = isStart || isEnd ? tokenizer.getTagName() : null;
+
+            if (isStart && tagName.equals("h3") && state != State.IN_WORKER_TABLE) {
+                state = State.IN_HEADING;
+                text.setLength(0);
+                continue;
+            }
+
+            switch (state) {
+                case IN_HEADING:
+                    if (token == HtmlTokenizer.Token.TEXT) {
+                        tokenizer.appendText(text);
+                    } else if (isEnd && tagName.equals("h3")) {
+                        balancer = matchBalancer(text.toString().trim());
+                        if (balancer != null) {
+                            state = State.AFTER_HEADING;
+                            tableDepth = 0;
+                            tablesSeen = 0;
+                        } else {
+                            state = State.OUTSIDE;
+                        }
+                    }
+                    break;
+
+                case AFTER_HEADING:
+                    if (isStart && tagName.equals("table")) {
+                        if (tableDepth++ == 0 && ++tablesSeen == 2) {
+                            state = State.IN_WORKER_TABLE;
+                            table = new WorkerTable(balancer, balancerToWorkerMap, baseUrl);
+                        }
+                    } else if (isEnd && tagName.equals("table")) {
+                        tableDepth = Math.max(0, tableDepth - 1);
+                    }
+                    break;
+
+                case IN_WORKER_TABLE:
+                    if (token == HtmlTokenizer.Token.TEXT) {
+                        table.text(tokenizer);
+                    } else if (isStart && tagName.equals("table")) {
+                        tableDepth++;
+                    } else if (isEnd && tagName.equals("table")) {
+                        if (--tableDepth == 0) {
+                            table.endRow();
+                            state = State.OUTSIDE;
+                        }
+                    } else if (isStart) {
+                        table.startTag(tagName, tokenizer);
+                    } else if (isEnd) {
+                        table.endTag(tagName);
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return balancerToWorkerMap;
+    }
+
+    /**
+     * Checks if a heading is the start of one of the configured balancers.
+     *
+     * @return The heading up to and including the balancer name, or null if it is not a configured balancer
+     */
+    String matchBalancer(final String heading) {
+        if (!heading.startsWith(HEADING_PREFIX)) {
+            return null;
+        }
+        final int[] matchEnd = {-1};
+        balancerMatcher.search(heading, new AhoCorasick.MatchHandler() {
+            @Override
+            public boolean match(int pattern, int end) {
+                // Apache 2.4 adds " [route_prefix]" after the name
+                if (end == heading.length() || Character.isWhitespace(heading.charAt(end))) {
+                    matchEnd[0] = end;
+                    return false;
+                }
+                return true;
+            }
+        });
+        return matchEnd[0] >= 0 ? heading.substring(0, matchEnd[0]) : null;
+    }
+
+    /**
+     * @return The heading for a balancer name, e.g. "LoadBalancer Status for balancer://mycluster",
+     *         as used for the keys returned by parse()
+     */
+    public static String toHeading(String balancerName) {
+        return HEADING_PREFIX + " " + balancerName;
+    }
+
+    /**
+     * @return The balancer name from a heading returned by parse(), e.g. "balancer://mycluster"
+     */
+    public static String getBalancerName(String heading) {
+        return heading.startsWith(HEADING_PREFIX) ? heading.substring(HEADING_PREFIX.length()).trim() : heading;
+    }
+
+    private static String resolve(URL baseUrl, String link) {
+        if (baseUrl == null) {
+            return link;
+        }
+        try {
+            return new URL(baseUrl, link).toString();
+        } catch (MalformedURLException e) {
+            return link;
+        }
+    }
+    /**
+     * Collects the cells of the rows in a worker table, and adds a worker for each row with a link.
+     * End tags of rows and cells are optional, a new row or cell also ends the previous one.
+     */
+    private static class WorkerTable {
+        private final String balancer;
+        private final OrderedMultiMap<String, Worker> balancerToWorkerMap;
+        private final URL baseUrl;
+
+        private final List<String> headers = new ArrayList<String>();
+        private final List<String> cells = new ArrayList<String>();
+        private final StringBuilder cellText = new StringBuilder(32);
+        private final StringBuilder linkText = new StringBuilder(32);
+        private boolean inCell;
+        private boolean inHeaderCell;
+        private boolean inLink;
+        private String linkUrl;
+
+        WorkerTable(String balancer, OrderedMultiMap<String, Worker> balancerToWorkerMap, URL baseUrl) {
+            this.balancer = balancer;
+            this.balancerToWorkerMap = balancerToWorkerMap;
+            this.baseUrl = baseUrl;
+        }
+
+        void startTag(String tagName, HtmlTokenizer tokenizer) {
+            if (tagName.equals("tr")) {
+                endRow();
+            } else if (tagName.equals("td") || tagName.equals("th")) {
+                endCell();
+                inCell = true;
+                inHeaderCell = tagName.equals("th");
+                cellText.setLength(0);
+            } else if (tagName.equals("a")) {
+                String href = tokenizer.getAttribute("href");
+                if (href != null && linkUrl == null) {
+                    linkUrl = href;
+                    inLink = true;
+                    linkText.setLength(0);
+                }
+            }
+        }
+
+        void endTag(String tagName) {
+            if (tagName.equals("tr")) {
+                endRow();
+            } else if (tagName.equals("td") || tagName.equals("th")) {
+                endCell();
+            } else if (tagName.equals("a")) {
+                inLink = false;
+            }
+        }
+
+        void text(HtmlTokenizer tokenizer) {
+            if (inLink) {
+                tokenizer.appendText(linkText);
+            }
+            if (inCell) {
+                tokenizer.appendText(cellText);
+            }
+        }
+
+        void endRow() {
+            endCell();
+            if (linkUrl != null) {
+                balancerToWorkerMap.put(balancer, new Worker(linkText.toString().trim(), resolve(baseUrl, linkUrl),
+                        getCell(STATUS_HEADER), getCell(ROUTE_HEADER), getCell(REDIRECT_HEADER), getCell(FACTOR_HEADER),
+                        getCell(SET_HEADER), parseCount(getCell(ELECTED_HEADER)), (int) parseCount(getCell(BUSY_HEADER)),
+                        getCell(TO_HEADER), getCell(FROM_HEADER)));
+            }
+            cells.clear();
+            linkUrl = null;
+            inLink = false;
+        }
+
+        private void endCell() {
+            if (!inCell) {
+                return;
+            }
+            String value = cellText.toString().trim();
+            if (inHeaderCell) {
+                headers.add(value);
+            } else {
+                cells.add(value);
+            }
+            inCell = false;
+        }
+
+        private String getCell(String header) {
+            int index = headers.indexOf(header);
+            return index >= 0 && index < cells.size() ? cells.get(index) : null;
+        }
+    }
+
+    /**
+     * @return The number, or Worker.UNKNOWN if the column is missing or not a number
+     */
+    static long parseCount(String value) {
+        if (value == null) {
+            return Worker.UNKNOWN;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return Worker.UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package se.mt.loadbalancerupdater.parser;
+
+import se.mt.loadbalancerupdater.Worker;
+import se.mt.loadbalancerupdater.util.OrderedMultiMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the XML status of an Apache 2.4 balancer-manager (balancer-manager?xml=1) with a streaming StAX reader:
+ * <pre>
+ * &lt;httpd:manager&gt;&lt;httpd:balancers&gt;&lt;httpd:balancer&gt;
+ *   &lt;httpd:name&gt;balancer://mycluster&lt;/httpd:name&gt;
+ *   &lt;httpd:workers&gt;&lt;httpd:worker&gt;
+ *     &lt;httpd:name&gt;http://tomcat1:8080&lt;/httpd:name&gt; ... &lt;httpd:status&gt;Init Ok&lt;/httpd:status&gt; ... &lt;httpd:busy&gt;0&lt;/httpd:busy&gt;
+ * </pre>
+ * The result has the same keys as StatusPageParser's. Since the XML has no links, the worker URLs are built
+ * like the ones on the HTML page. Not all 2.4 versions include the nonce in the XML, in which case the URLs lack it.
+ */
+public class XmlStatusParser {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    // The worker elements that are kept, other than the name
+    private static final Set<String> WORKER_FIELDS = new HashSet<String>(Arrays.asList(
+            "status", "route", "redirect", "loadfactor", "lbset", "elected", "busy", "transferred", "read"));
+
+    private Set<String> balancerNames;
+
+    public XmlStatusParser(List<String> balancerNames) {
+        this.balancerNames = new HashSet<String>(balancerNames);
+    }
+
+    /**
+     * @param in        The XML document
+     * @param baseUrl   The URL of the balancer-manager, used to build worker URLs
+     */
+    public OrderedMultiMap<String, Worker> parse(InputStream in, URL baseUrl) throws IOException {
+        OrderedMultiMap<String, Worker> balancerToWorkerMap = new OrderedMultiMap<String, Worker>();
+        String managerUrl = baseUrl.getProtocol() + "://" + baseUrl.getAuthority() + baseUrl.getPath();
+
+        try {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                String balancer = null;
+                String nonce = null;
+                boolean inWorker = false;
+                String workerName = null;
+                Map<String, String> workerFields = new HashMap<String, String>();
+
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("balancer")) {
+                            balancer = null;
+                            nonce = null;
+                        } else if (name.equals("worker")) {
+                            inWorker = true;
+                            workerName = null;
+                            workerFields.clear();
+                        } else if (name.equals("name")) {
+                            String text = reader.getElementText().trim();
+                            if (inWorker) {
+                                workerName = text;
+                            } else {
+                                balancer = text;
+                            }
+                        } else if (name.equals("nonce") && !inWorker) {
+                            nonce = reader.getElementText().trim();
+                        } else if (inWorker && WORKER_FIELDS.contains(name)) {
+                            workerFields.put(name, reader.getElementText().trim());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("worker")) {
+                        inWorker = false;
+                        String shortName = getShortName(balancer);
+                        if (workerName != null && shortName != null && balancerNames.contains(shortName)) {
+                            String url = managerUrl + "?b=" + encode(shortName) + "&w=" + encode(workerName)
+                                    + (nonce != null ? "&nonce=" + encode(nonce) : "");
+                            balancerToWorkerMap.put(StatusPageParser.toHeading(balancer), new Worker(workerName, url,
+                                    workerFields.get("status"), workerFields.get("route"), workerFields.get("redirect"),
+                                    workerFields.get("loadfactor"), workerFields.get("lbset"),
+                                    StatusPageParser.parseCount(workerFields.get("elected")),
+                                    (int) StatusPageParser.parseCount(workerFields.get("busy")),
+                                    workerFields.get("transferred"), workerFields.get("read")));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            IOException ioe = new IOException("Bad balancer-manager XML from " + baseUrl + ": " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+        return balancerToWorkerMap;
+    }
+
+    /**
+     * @return "mycluster" for "balancer://mycluster"
+     */
+    private static String getShortName(String balancer) {
+        if (balancer == null) {
+            return null;
+        }
+        int pos = balancer.indexOf("://");
+        return pos >= 0 ? balancer.substring(pos + 3) : balancer;
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+}
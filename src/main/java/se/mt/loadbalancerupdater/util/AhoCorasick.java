@@ -0,0 +1,164 @@
+package se.mt.loadbalancerupdater.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton: finds all occurrences of any number of patterns in a text in one pass over the text,
+ * however many patterns there are. Immutable and thread safe once built.
+ */
+public class AhoCorasick {
+
+    /**
+     * Receives the matches found by search().
+     */
+    public interface MatchHandler {
+        /**
+         * @param pattern   Index of the matched pattern
+         * @param end       Index in the text just after the match
+         * @return          False to stop searching
+         */
+        boolean match(int pattern, int end);
+    }
+
+    private static final int[] NO_OUTPUTS = new int[0];
+
+    // Per state: the sorted characters of its edges and the states they lead to
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    // Per state: the patterns that end in it, including those of its failure chain
+    private final int[][] outputs;
+    private final int patternCount;
+
+    public AhoCorasick(List<String> patterns) {
+        patternCount = patterns.size();
+
+        // Build the trie with maps, then freeze it into arrays
+        List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+        List<List<Integer>> trieOutputs = new ArrayList<List<Integer>>();
+        trie.add(new TreeMap<Character, Integer>());
+        trieOutputs.add(new ArrayList<Integer>());
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = trie.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    trieOutputs.add(new ArrayList<Integer>());
+                    trie.get(state).put(pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            trieOutputs.get(state).add(p);
+        }
+
+        int stateCount = trie.size();
+        edgeChars = new char[stateCount][];
+        edgeTargets = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            TreeMap<Character, Integer> edges = trie.get(state);
+            edgeChars[state] = new char[edges.size()];
+            edgeTargets[state] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[state][i] = edge.getKey();
+                edgeTargets[state][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        // Breadth first, so that the failure state of a state is always done before the state itself
+        failure = new int[stateCount];
+        outputs = new int[stateCount][];
+        outputs[0] = toArray(trieOutputs.get(0));
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int target : edgeTargets[0]) {
+            failure[target] = 0;
+            queue[tail++] = target;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            List<Integer> stateOutputs = trieOutputs.get(state);
+            int[] inherited = outputs[failure[state]];
+            int[] merged = new int[stateOutputs.size() + inherited.length];
+            for (int i = 0; i < stateOutputs.size(); i++) {
+                merged[i] = stateOutputs.get(i);
+            }
+            System.arraycopy(inherited, 0, merged, stateOutputs.size(), inherited.length);
+            outputs[state] = merged.length == 0 ? NO_OUTPUTS : merged;
+
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                char c = edgeChars[state][i];
+                int target = edgeTargets[state][i];
+                int fail = failure[state];
+                int next;
+                while ((next = step(fail, c)) < 0 && fail != 0) {
+                    fail = failure[fail];
+                }
+                failure[target] = next >= 0 ? next : 0;
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Reports every occurrence of every pattern, in the order they end in the text.
+     */
+    public void search(CharSequence text, MatchHandler handler) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = next >= 0 ? next : 0;
+            for (int pattern : outputs[state]) {
+                if (!handler.match(pattern, i + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The indexes of the patterns that occur anywhere in the text
+     */
+    public BitSet findAll(CharSequence text) {
+        final BitSet found = new BitSet(patternCount);
+        search(text, new MatchHandler() {
+            @Override
+            public boolean match(int pattern, int end) {
+                found.set(pattern);
+                return true;
+            }
+        });
+        return found;
+    }
+
+    private int step(int state, char c) {
+        int i = Arrays.binarySearch(edgeChars[state], c);
+        return i >= 0 ? edgeTargets[state][i] : -1;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array.length == 0 ? NO_OUTPUTS : array;
+    }
+}
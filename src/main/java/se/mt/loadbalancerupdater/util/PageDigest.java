@@ -0,0 +1,121 @@
+package se.mt.loadbalancerupdater.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A 64 bit hash of a status page that leaves out volatile sections, such as the traffic counters that
+ * change on every fetch. Two pages with the same digest show the same balancers, workers and states.
+ * <p/>
+ * The volatile sections are given as regular expressions, matched against the page read as ISO-8859-1.
+ */
+public class PageDigest {
+
+    /**
+     * The trailing number cells of each worker row on the HTML page: Elected, To and From on Apache 2.2,
+     * and also Busy and Load on 2.4. The counters of the 2.4 XML status.
+     */
+    public static final List<String> DEFAULT_VOLATILE_PATTERNS = Collections.unmodifiableList(Arrays.asList(
+            "<td>\\s*-?[\\d.]+\\s*[KMGTP]?\\s*</td>(?:\\s*<td>\\s*-?[\\d.]+\\s*[KMGTP]?\\s*</td>)*\\s*</tr>",
+            "<httpd:(elected|busy|lbstatus|transferred|read)>[^<]*</httpd:\\1>"));
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final List<Pattern> volatilePatterns = new ArrayList<Pattern>();
+
+    public PageDigest(List<String> volatilePatterns) {
+        for (String pattern : volatilePatterns) {
+            this.volatilePatterns.add(Pattern.compile(pattern));
+        }
+    }
+
+    public long digest(byte[] page) {
+        CharSequence chars = new Latin1Chars(page);
+        // Start and end of each volatile section, which may overlap
+        List<int[]> sections = new ArrayList<int[]>();
+        for (Pattern pattern : volatilePatterns) {
+            Matcher matcher = pattern.matcher(chars);
+            while (matcher.find()) {
+                if (matcher.end() > matcher.start()) {
+                    sections.add(new int[]{matcher.start(), matcher.end()});
+                }
+            }
+        }
+        if (volatilePatterns.size() > 1) {
+            Collections.sort(sections, new Comparator<int[]>() {
+                @Override
+                public int compare(int[] a, int[] b) {
+                    return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+                }
+            });
+        }
+
+        long hash = FNV_OFFSET;
+        int pos = 0;
+        for (int[] section : sections) {
+            if (section[0] > pos) {
+                hash = update(hash, page, pos, section[0]);
+                // Mark where something was left out, so that moving a section changes the digest
+                hash = (hash ^ 0xff) * FNV_PRIME;
+            }
+            pos = Math.max(pos, section[1]);
+        }
+        return update(hash, page, pos, page.length);
+    }
+
+    private static long update(long hash, byte[] page, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (page[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Lets regular expressions run over the page bytes without decoding them into a String first.
+     */
+    private static class Latin1Chars implements CharSequence {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        Latin1Chars(byte[] bytes) {
+            this(bytes, 0, bytes.length);
+        }
+
+        Latin1Chars(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[offset + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Latin1Chars(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package se.mt.loadbalancerupdater.util;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class QueryStrings {
+
+    private QueryStrings() {
+    }
+
+    /**
+     * Parses the query string of a URL into decoded name/value pairs, in the order they appear.
+     * Also accepts "&amp;amp;" as separator, since links copied from HTML are sometimes left escaped.
+     *
+     * @param url   A URL, absolute or relative, with or without a query string
+     * @return      The parameters, empty if there is no query string
+     */
+    public static Map<String, String> parse(String url) {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            return params;
+        }
+        int queryEnd = url.indexOf('#', queryStart);
+        String query = url.substring(queryStart + 1, queryEnd < 0 ? url.length() : queryEnd);
+
+        for (String pair : query.split("&")) {
+            if (pair.startsWith("amp;")) {
+                pair = pair.substring(4);
+            }
+            if (pair.length() == 0) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            if (eq < 0) {
+                params.put(decode(pair), "");
+            } else {
+                params.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Encodes parameters as application/x-www-form-urlencoded, usable both as a query string and as a POST body.
+     */
+    public static String encode(Map<String, String> params) {
+        StringBuilder sb = new StringBuilder(128);
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(encode(entry.getKey())).append('=').append(encode(entry.getValue() != null ? entry.getValue() : ""));
+        }
+        return sb.toString();
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalArgumentException e) {
+            // Not properly encoded, use it as it is
+            return s;
+        }
+    }
+}